@@ -0,0 +1,11 @@
+#!/bin/sh
+# Runs the validation benchmarks with 1, 2, 4, ... threads up to the number of cores, one CSV per thread count.
+set -e
+cd "$(dirname "$0")"
+max=$(nproc 2>/dev/null || echo 4)
+t=1
+while [ "$t" -le "$max" ]; do
+    java -jar target/benchmarks.jar ValidationBenchmark -p prefix=false -p idLength=18 -t "$t" -prof gc \
+        -rf csv -rff "contention-t$t.csv" "$@"
+    t=$((t * 2))
+done
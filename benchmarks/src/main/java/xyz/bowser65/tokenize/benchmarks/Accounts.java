@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize.benchmarks;
+
+import xyz.bowser65.tokenize.AccountFetcher;
+import xyz.bowser65.tokenize.AsyncAccountFetcher;
+import xyz.bowser65.tokenize.IAccount;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * In-memory accounts and fetchers, so that benchmarks measure Tokenize rather than a store.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+final class Accounts {
+    /**
+     * Id of an account every token was revoked for.
+     */
+    static final String REVOKED_ID = "revoked";
+
+    private final Map<String, IAccount> accounts = new HashMap<>();
+
+    Accounts() {
+        this.put(new Account(REVOKED_ID, Long.MAX_VALUE));
+    }
+
+    /**
+     * @param length Length of the id.
+     * @return An account with an id of {@code length} digits, whose tokens are all valid.
+     */
+    static IAccount withIdLength(final int length) {
+        final char[] id = new char[length];
+        Arrays.fill(id, '7');
+        return new Account(new String(id), 0);
+    }
+
+    Accounts put(final IAccount account) {
+        this.accounts.put(account.getTokenId(), account);
+        return this;
+    }
+
+    AccountFetcher fetcher() {
+        return this.accounts::get;
+    }
+
+    AsyncAccountFetcher asyncFetcher() {
+        return id -> CompletableFuture.completedFuture(this.accounts.get(id));
+    }
+
+    static final class Account implements IAccount {
+        private final String id;
+        private final long validSince;
+
+        Account(final String id, final long validSince) {
+            this.id = id;
+            this.validSince = validSince;
+        }
+
+        @Override
+        public String getTokenId() {
+            return this.id;
+        }
+
+        @Override
+        public long tokensValidSince() {
+            return this.validSince;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.bowser65.tokenize.AccountFetcher;
+import xyz.bowser65.tokenize.AsyncAccountFetcher;
+import xyz.bowser65.tokenize.IAccount;
+import xyz.bowser65.tokenize.Token;
+import xyz.bowser65.tokenize.TokenFormat;
+import xyz.bowser65.tokenize.Tokenize;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of valid, forged and revoked tokens. The state is shared, so running with {@code -t N} measures
+ * contention between validating threads.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ValidationBenchmark {
+    @Param({"TEXT", "COMPACT"})
+    public TokenFormat format;
+
+    @Param({"18", "64"})
+    public int idLength;
+
+    @Param({"false", "true"})
+    public boolean prefix;
+
+    private Tokenize tokenize;
+    private AccountFetcher fetcher;
+    private AsyncAccountFetcher asyncFetcher;
+    private String valid, forged, revoked;
+
+    @Setup
+    public void setup() {
+        this.tokenize = Tokenize.builder()
+                .secret("benchmark secret".getBytes(StandardCharsets.UTF_8))
+                .format(this.format)
+                .build();
+        final IAccount account = Accounts.withIdLength(this.idLength);
+        final Accounts accounts = new Accounts().put(account);
+        this.fetcher = accounts.fetcher();
+        this.asyncFetcher = accounts.asyncFetcher();
+
+        final String prefix = this.prefix ? "Bot" : null;
+        this.valid = this.tokenize.generateToken(account, prefix).toString();
+        this.revoked = this.tokenize.generateToken(new Accounts.Account(Accounts.REVOKED_ID, 0), prefix).toString();
+
+        // Alters a character of the MAC, which both formats end with
+        final char[] chars = this.valid.toCharArray();
+        final int i = chars.length - 5;
+        chars[i] = chars[i] == 'A' ? 'B' : 'A';
+        this.forged = new String(chars);
+    }
+
+    @Benchmark
+    public Token valid() throws SignatureException {
+        return this.tokenize.validateToken(this.valid, this.fetcher);
+    }
+
+    @Benchmark
+    public Token validAsync() throws SignatureException {
+        return this.tokenize.validateToken(this.valid, this.asyncFetcher).toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Object badSignature() {
+        try {
+            return this.tokenize.validateToken(this.forged, this.fetcher);
+        } catch (SignatureException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Token revoked() throws SignatureException {
+        return this.tokenize.validateToken(this.revoked, this.fetcher);
+    }
+}
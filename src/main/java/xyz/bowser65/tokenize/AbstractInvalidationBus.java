@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Base of {@link InvalidationBus}es, gathering the invalidations published within a short window into a single
+ * batch. Invalidations of a same account within a batch are coalesced, keeping the latest
+ * {@link IAccount#tokensValidSince()}.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public abstract class AbstractInvalidationBus implements InvalidationBus {
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final List<InvalidationSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder subscriberFailures = new LongAdder();
+
+    /**
+     * Batch being gathered, guarded by {@code this}.
+     */
+    private Map<String, Long> batch;
+    private boolean closed;
+
+    /**
+     * @param window       How long to gather invalidations before sending a batch.
+     * @param maxBatchSize Batches are sent as soon as they reach this many distinct accounts.
+     */
+    protected AbstractInvalidationBus(@Nonnull final Duration window, final int maxBatchSize) {
+        this(window, maxBatchSize, Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "tokenize-invalidation-bus");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * @param window       How long to gather invalidations before sending a batch.
+     * @param maxBatchSize Batches are sent as soon as they reach this many distinct accounts.
+     * @param scheduler    Scheduler used to send batches. It isn't shut down on close.
+     */
+    protected AbstractInvalidationBus(@Nonnull final Duration window, final int maxBatchSize, @Nonnull final ScheduledExecutorService scheduler) {
+        this(window, maxBatchSize, scheduler, false);
+    }
+
+    private AbstractInvalidationBus(final Duration window, final int maxBatchSize, final ScheduledExecutorService scheduler,
+                                    final boolean ownsScheduler) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    @Override
+    public void publish(@Nonnull final String accountId, final long tokensValidSince) {
+        Map<String, Long> full = null;
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("Bus is closed");
+            }
+            if (this.batch == null) {
+                final Map<String, Long> opened = new HashMap<>();
+                try {
+                    // Can't run before the batch is opened, as dispatching needs the lock held here
+                    this.scheduler.schedule(() -> this.dispatch(opened), this.windowNanos, TimeUnit.NANOSECONDS);
+                    this.batch = opened;
+                } catch (RejectedExecutionException e) {
+                    // Nothing would flush the batch, so the invalidation is sent right away on its own
+                    full = opened;
+                }
+            }
+            if (full != null) {
+                full.put(accountId, tokensValidSince);
+            } else {
+                this.batch.merge(accountId, tokensValidSince, Math::max);
+                if (this.batch.size() >= this.maxBatchSize) {
+                    full = this.batch;
+                    this.batch = null;
+                }
+            }
+        }
+        if (full != null) {
+            this.send(full);
+        }
+    }
+
+    @Override
+    public void subscribe(@Nonnull final InvalidationSubscriber subscriber) {
+        this.subscribers.add(subscriber);
+    }
+
+    @Override
+    public void unsubscribe(@Nonnull final InvalidationSubscriber subscriber) {
+        this.subscribers.remove(subscriber);
+    }
+
+    @Override
+    public void close() {
+        final Map<String, Long> last;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            last = this.batch;
+            this.batch = null;
+        }
+        if (last != null) {
+            this.send(last);
+        }
+        if (this.ownsScheduler) {
+            this.scheduler.shutdown();
+        }
+        this.closeTransport();
+    }
+
+    /**
+     * @return Number of batches that couldn't be transmitted.
+     */
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    /**
+     * @return Number of invalidations a subscriber threw on.
+     */
+    public long getSubscriberFailureCount() {
+        return this.subscriberFailures.sum();
+    }
+
+    /**
+     * Sends a batch to every node, this one included.
+     *
+     * @param batch Latest {@link IAccount#tokensValidSince()} of each invalidated account.
+     * @throws IOException If the batch couldn't be sent.
+     */
+    protected abstract void transmit(@Nonnull Map<String, Long> batch) throws IOException;
+
+    /**
+     * Releases the transport, once the last batch was sent. Does nothing by default.
+     */
+    protected void closeTransport() {
+    }
+
+    /**
+     * Delivers an invalidation received by this node to its subscribers. A subscriber throwing doesn't keep the
+     * others from getting it.
+     */
+    protected final void deliver(@Nonnull final String accountId, final long tokensValidSince) {
+        for (final InvalidationSubscriber subscriber : this.subscribers) {
+            try {
+                subscriber.onInvalidation(accountId, tokensValidSince);
+            } catch (RuntimeException e) {
+                this.subscriberFailures.increment();
+            }
+        }
+    }
+
+    private void dispatch(final Map<String, Long> opened) {
+        synchronized (this) {
+            if (this.batch != opened) {
+                return; // Already sent because it was full
+            }
+            this.batch = null;
+        }
+        this.send(opened);
+    }
+
+    private void send(final Map<String, Long> batch) {
+        try {
+            this.transmit(Collections.unmodifiableMap(batch));
+        } catch (IOException | RuntimeException e) {
+            this.failures.increment();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Account cache shared by the caching fetchers. Caches missing accounts for a shorter time than found ones, and
+ * tracks in-flight fetches so concurrent lookups of the same ID share a single one.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+final class AccountCache {
+    /**
+     * Cached in place of accounts that don't exist.
+     */
+    private static final IAccount MISSING = new IAccount() {
+        @Override
+        public String getTokenId() {
+            return null;
+        }
+
+        @Override
+        public long tokensValidSince() {
+            return Long.MAX_VALUE;
+        }
+    };
+
+    final ConcurrentHashMap<String, CompletableFuture<IAccount>> inFlight = new ConcurrentHashMap<>();
+    private final ExpiringCache<String, IAccount> cache;
+    private final long negativeTtlNanos;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    AccountCache(final int maximumSize, @Nonnull final Duration ttl, @Nonnull final Duration negativeTtl) {
+        this.cache = new ExpiringCache<>(maximumSize, ttl.toNanos(), TimeUnit.NANOSECONDS, null);
+        this.negativeTtlNanos = negativeTtl.toNanos();
+    }
+
+    /**
+     * @return The cached account, {@link #MISSING} if it's known not to exist, or {@code null} if it isn't cached.
+     */
+    @Nullable
+    IAccount get(@Nonnull final String id) {
+        return this.cache.get(id);
+    }
+
+    /**
+     * Same as {@link #get(String)}, without counting a hit or a miss. Used to catch fetches that completed between a
+     * miss and the registration of a new in-flight fetch.
+     */
+    @Nullable
+    IAccount peek(@Nonnull final String id) {
+        return this.cache.peek(id);
+    }
+
+    /**
+     * @return {@code null} if {@code cached} is the missing account marker, {@code cached} otherwise.
+     */
+    @Nullable
+    static IAccount unwrap(@Nonnull final IAccount cached) {
+        return cached == MISSING ? null : cached;
+    }
+
+    /**
+     * @return Invalidation generation to pass to {@link #store(String, IAccount, long)} once the fetch completes.
+     */
+    long generation() {
+        return this.invalidations.get();
+    }
+
+    /**
+     * Caches the result of a fetch, unless the cache got invalidated since it started.
+     */
+    void store(@Nonnull final String id, @Nullable final IAccount account, final long generation) {
+        if (account != null) {
+            this.cache.put(id, account);
+        } else if (this.negativeTtlNanos > 0) {
+            this.cache.put(id, MISSING, this.negativeTtlNanos);
+        } else {
+            return;
+        }
+
+        if (this.invalidations.get() != generation) {
+            this.cache.remove(id);
+        }
+    }
+
+    void invalidate(@Nonnull final String id) {
+        this.invalidations.incrementAndGet();
+        this.inFlight.remove(id);
+        this.cache.remove(id);
+    }
+
+    void invalidateAll() {
+        this.invalidations.incrementAndGet();
+        this.inFlight.clear();
+        this.cache.clear();
+    }
+
+    long size() {
+        return this.cache.size();
+    }
+
+    long hitCount() {
+        return this.cache.hitCount();
+    }
+
+    long missCount() {
+        return this.cache.missCount();
+    }
+
+    long evictionCount() {
+        return this.cache.evictionCount();
+    }
+}
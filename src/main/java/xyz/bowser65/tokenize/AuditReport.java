@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Summary of a {@link TokenAuditor} run: the number of tokens of each outcome, and for each account the number of
+ * its tokens that are still valid or were revoked.
+ * <p>
+ * Forged tokens are counted as {@link ValidationResult.Status#BAD_SIGNATURE}. Tokens revoked through the revocation
+ * store aren't attributed to an account, since their account isn't fetched.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public final class AuditReport {
+    private final long[] counts;
+    private final Map<String, long[]> accounts;
+
+    AuditReport(final long[] counts, final Map<String, long[]> accounts) {
+        this.counts = counts;
+        this.accounts = accounts;
+    }
+
+    /**
+     * @param status An outcome.
+     * @return Number of tokens that had this outcome.
+     */
+    public long getCount(@Nonnull final ValidationResult.Status status) {
+        return this.counts[status.ordinal()];
+    }
+
+    /**
+     * @return Number of tokens audited, empty lines excluded.
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (final long count : this.counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return IDs of the accounts that have valid or revoked tokens in the audited files.
+     */
+    @Nonnull
+    public Set<String> getAccountIds() {
+        return Collections.unmodifiableSet(this.accounts.keySet());
+    }
+
+    /**
+     * @param accountId ID of an account.
+     * @return Number of valid tokens of the account.
+     */
+    public long getValidCount(@Nonnull final String accountId) {
+        final long[] counts = this.accounts.get(accountId);
+        return counts == null ? 0 : counts[0];
+    }
+
+    /**
+     * @param accountId ID of an account.
+     * @return Number of tokens of the account revoked by moving its {@link IAccount#tokensValidSince()} forward.
+     */
+    public long getRevokedCount(@Nonnull final String accountId) {
+        final long[] counts = this.accounts.get(accountId);
+        return counts == null ? 0 : counts[1];
+    }
+
+    /**
+     * Writes the report as CSV, one line per outcome and then one line per account, without building it in memory.
+     *
+     * @param out Destination of the report.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(@Nonnull final Appendable out) throws IOException {
+        out.append("status,count\n");
+        for (final ValidationResult.Status status : ValidationResult.Status.values()) {
+            out.append(status.name()).append(',').append(Long.toString(this.getCount(status))).append('\n');
+        }
+        out.append("\naccount,valid,revoked\n");
+        for (final Map.Entry<String, long[]> account : this.accounts.entrySet()) {
+            appendField(out, account.getKey());
+            out.append(',').append(Long.toString(account.getValue()[0]))
+                    .append(',').append(Long.toString(account.getValue()[1])).append('\n');
+        }
+    }
+
+    private static void appendField(final Appendable out, final String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            final char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+}
@@ -27,61 +27,407 @@
 
 package xyz.bowser65.tokenize;
 
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-class Base32 {
+/**
+ * RFC 4648 Base32 codec. Decoding goes through a lookup table, accepts lowercase letters and optional padding, and
+ * rejects any other character. Encoding doesn't pad.
+ *
+ * @author Bowser65
+ * @since 1.0.0
+ */
+public final class Base32 {
     static final char[] ALPHABET = {
             'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P',
             'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z', '2', '3', '4', '5', '6', '7'
     };
 
-    static byte[] decode(final String base32) {
-        final int[] b = new int[8];
-        final byte[] bytes = new byte[base32.length()];
-        final int count = base32.length() >> 3 << 3;
-        int byteIndex = 0, i = 0;
+    /**
+     * 5-bit value of each ASCII character, {@code -1} for characters outside of the alphabet.
+     */
+    private static final byte[] LOOKUP = new byte[128];
+
+    static {
+        Arrays.fill(LOOKUP, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            LOOKUP[ALPHABET[i]] = (byte) i;
+            LOOKUP[Character.toLowerCase(ALPHABET[i])] = (byte) i;
+        }
+    }
+
+    private Base32() {
+    }
+
+    /**
+     * @param length Number of bytes.
+     * @return Number of characters {@code length} bytes encode to.
+     * @since 1.1.0
+     */
+    public static int encodedLength(final int length) {
+        return (int) (((long) length * 8 + 4) / 5);
+    }
+
+    /**
+     * @param length Number of characters, padding excluded.
+     * @return Number of bytes {@code length} characters decode to.
+     * @throws IllegalArgumentException If no Base32 string has this length.
+     * @since 1.1.0
+     */
+    public static int decodedLength(final int length) {
+        final int remain = length & 7;
+        if (remain == 1 || remain == 3 || remain == 6) {
+            throw new IllegalArgumentException("Invalid Base32 length: " + length);
+        }
+        return (int) ((long) length * 5 / 8);
+    }
 
-        for (; i < count; ) {
-            final int limit = i + 8;
-            for (; i < limit; i++) {
-                b[i % 8] = indexOf(base32.charAt(i));
+    /**
+     * @param base32 Base32 string, padding is optional.
+     * @return The decoded bytes.
+     * @throws IllegalArgumentException If the string isn't valid Base32.
+     */
+    @Nonnull
+    public static byte[] decode(@Nonnull final CharSequence base32) {
+        final int length = unpaddedLength(base32, 0, base32.length());
+        final byte[] bytes = new byte[decodedLength(length)];
+        int invalid = 0, i = 0, o = 0;
+        final int blocks = length & ~7;
+        for (; i < blocks; i += 8) {
+            long bits = 0;
+            for (int j = 0; j < 8; j++) {
+                final int value = lookup(base32.charAt(i + j));
+                invalid |= value;
+                bits = bits << 5 | value & 31;
             }
+            o = writeBlock(bits, bytes, o);
+        }
+        long bits = 0;
+        for (; i < length; i++) {
+            final int value = lookup(base32.charAt(i));
+            invalid |= value;
+            bits = bits << 5 | value & 31;
+        }
+        writeTail(bits, length - blocks, bytes, o);
+        return checked(invalid, bytes);
+    }
 
-            bytes[byteIndex++] = (byte) ((b[0] << 3 | b[1] >>> 2) & 255);
-            bytes[byteIndex++] = (byte) ((b[1] << 6 | b[2] << 1 | b[3] >>> 4) & 255);
-            bytes[byteIndex++] = (byte) ((b[3] << 4 | b[4] >>> 1) & 255);
-            bytes[byteIndex++] = (byte) ((b[4] << 7 | b[5] << 2 | b[6] >>> 3) & 255);
-            bytes[byteIndex++] = (byte) ((b[6] << 5 | b[7]) & 255);
+    /**
+     * @param base32 Array holding a Base32 string, padding is optional.
+     * @param offset Offset of the string in the array.
+     * @param length Length of the string.
+     * @return The decoded bytes.
+     * @throws IllegalArgumentException If the string isn't valid Base32.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public static byte[] decode(@Nonnull final char[] base32, final int offset, int length) {
+        while (length > 0 && base32[offset + length - 1] == '=') {
+            length--;
         }
+        final byte[] bytes = new byte[decodedLength(length)];
+        int invalid = 0, i = offset, o = 0;
+        final int end = offset + length, blocks = offset + (length & ~7);
+        for (; i < blocks; i += 8) {
+            long bits = 0;
+            for (int j = 0; j < 8; j++) {
+                final int value = lookup(base32[i + j]);
+                invalid |= value;
+                bits = bits << 5 | value & 31;
+            }
+            o = writeBlock(bits, bytes, o);
+        }
+        long bits = 0;
+        for (; i < end; i++) {
+            final int value = lookup(base32[i]);
+            invalid |= value;
+            bits = bits << 5 | value & 31;
+        }
+        writeTail(bits, end - blocks, bytes, o);
+        return checked(invalid, bytes);
+    }
 
-        final int remain = base32.length() - count;
-        if (remain == 2 || remain == 4 || remain == 5 || remain == 7) {
-            b[0] = indexOf(base32.charAt(i++));
-            b[1] = indexOf(base32.charAt(i++));
-            bytes[byteIndex++] = (byte) ((b[0] << 3 | b[1] >>> 2) & 255);
+    /**
+     * Decodes the remaining ASCII bytes of a buffer, advancing its position.
+     *
+     * @param base32 Buffer holding a Base32 string, padding is optional.
+     * @return The decoded bytes.
+     * @throws IllegalArgumentException If the string isn't valid Base32.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public static byte[] decode(@Nonnull final ByteBuffer base32) {
+        final int start = base32.position();
+        int length = base32.remaining();
+        while (length > 0 && base32.get(start + length - 1) == '=') {
+            length--;
         }
-        if (remain == 4 || remain == 5 || remain == 7) {
-            b[2] = indexOf(base32.charAt(i++));
-            b[3] = indexOf(base32.charAt(i++));
-            bytes[byteIndex++] = (byte) ((b[1] << 6 | b[2] << 1 | b[3] >>> 4) & 255);
+        final byte[] bytes = new byte[decodedLength(length)];
+        int invalid = 0, i = start, o = 0;
+        final int end = start + length, blocks = start + (length & ~7);
+        for (; i < blocks; i += 8) {
+            long bits = 0;
+            for (int j = 0; j < 8; j++) {
+                final int value = lookup((char) (base32.get(i + j) & 0xff));
+                invalid |= value;
+                bits = bits << 5 | value & 31;
+            }
+            o = writeBlock(bits, bytes, o);
         }
-        if (remain == 5 || remain == 7) {
-            b[4] = indexOf(base32.charAt(i++));
-            bytes[byteIndex++] = (byte) ((b[3] << 4 | b[4] >>> 1) & 255);
+        long bits = 0;
+        for (; i < end; i++) {
+            final int value = lookup((char) (base32.get(i) & 0xff));
+            invalid |= value;
+            bits = bits << 5 | value & 31;
         }
-        if (remain == 7) {
-            b[5] = indexOf(base32.charAt(i++));
-            b[6] = indexOf(base32.charAt(i));
-            bytes[byteIndex] = (byte) ((b[4] << 7 | b[5] << 2 | b[6] >>> 3) & 255);
+        writeTail(bits, end - blocks, bytes, o);
+        checked(invalid, bytes);
+        base32.position(base32.limit());
+        return bytes;
+    }
+
+    /**
+     * @param bytes The bytes to encode.
+     * @return The unpadded Base32 string.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public static String encode(@Nonnull final byte[] bytes) {
+        return encode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes  Array holding the bytes to encode.
+     * @param offset Offset of the bytes in the array.
+     * @param length Number of bytes.
+     * @return The unpadded Base32 string.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public static String encode(@Nonnull final byte[] bytes, final int offset, final int length) {
+        final char[] chars = new char[encodedLength(length)];
+        encode(bytes, offset, length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encodes the remaining bytes of a buffer, advancing its position.
+     *
+     * @param bytes Buffer holding the bytes to encode.
+     * @return The unpadded Base32 string.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public static String encode(@Nonnull final ByteBuffer bytes) {
+        final Encoder encoder = new Encoder();
+        final char[] chars = new char[encodedLength(bytes.remaining())];
+        int n = 0;
+        while (bytes.hasRemaining()) {
+            n += encoder.update(bytes.get(), chars, n);
         }
+        encoder.finish(chars, n);
+        return new String(chars);
+    }
 
-        return Arrays.copyOf(bytes, byteIndex);
+    /**
+     * Encodes bytes into a char array.
+     *
+     * @param bytes     Array holding the bytes to encode.
+     * @param offset    Offset of the bytes in the array.
+     * @param length    Number of bytes.
+     * @param dst       Array receiving the unpadded Base32 characters.
+     * @param dstOffset Where to start writing.
+     * @return Number of characters written, which is {@link #encodedLength(int) encodedLength(length)}.
+     * @since 1.1.0
+     */
+    public static int encode(@Nonnull final byte[] bytes, final int offset, final int length, @Nonnull final char[] dst, final int dstOffset) {
+        final int end = offset + length, blocks = offset + length / 5 * 5;
+        int i = offset, o = dstOffset;
+        for (; i < blocks; i += 5) {
+            final long bits = (bytes[i] & 0xffL) << 32 | (bytes[i + 1] & 0xffL) << 24 | (bytes[i + 2] & 0xffL) << 16
+                    | (bytes[i + 3] & 0xffL) << 8 | bytes[i + 4] & 0xffL;
+            for (int shift = 35; shift >= 0; shift -= 5) {
+                dst[o++] = ALPHABET[(int) (bits >>> shift) & 31];
+            }
+        }
+        final int remain = end - i;
+        if (remain > 0) {
+            long bits = 0;
+            for (; i < end; i++) {
+                bits = bits << 8 | bytes[i] & 0xff;
+            }
+            final int bitCount = remain * 8;
+            final int chars = (bitCount + 4) / 5;
+            bits <<= chars * 5 - bitCount;
+            for (int shift = (chars - 1) * 5; shift >= 0; shift -= 5) {
+                dst[o++] = ALPHABET[(int) (bits >>> shift) & 31];
+            }
+        }
+        return o - dstOffset;
     }
 
-    private static int indexOf(final char c) {
-        for (int i = 0; i < ALPHABET.length; i++) {
-            if (ALPHABET[i] == c) return i;
+    private static int lookup(final char c) {
+        return c < 128 ? LOOKUP[c] : -1;
+    }
+
+    private static int unpaddedLength(final CharSequence base32, final int offset, int length) {
+        while (length > 0 && base32.charAt(offset + length - 1) == '=') {
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the 5 bytes held by the 40 low bits of {@code bits}.
+     */
+    private static int writeBlock(final long bits, final byte[] dst, int o) {
+        dst[o++] = (byte) (bits >>> 32);
+        dst[o++] = (byte) (bits >>> 24);
+        dst[o++] = (byte) (bits >>> 16);
+        dst[o++] = (byte) (bits >>> 8);
+        dst[o++] = (byte) bits;
+        return o;
+    }
+
+    /**
+     * Writes the bytes held by a trailing partial block of {@code chars} characters, dropping the unused low bits.
+     */
+    private static void writeTail(long bits, final int chars, final byte[] dst, int o) {
+        final int bytes = chars * 5 / 8;
+        bits >>>= chars * 5 - bytes * 8;
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            dst[o++] = (byte) (bits >>> shift);
+        }
+    }
+
+    private static byte[] checked(final int invalid, final byte[] bytes) {
+        if (invalid < 0) {
+            throw new IllegalArgumentException("Invalid Base32 character");
+        }
+        return bytes;
+    }
+
+    /**
+     * Incremental Base32 encoder, for input that arrives in chunks. Not thread-safe.
+     *
+     * @since 1.1.0
+     */
+    public static final class Encoder {
+        private int bits;
+        private int bitCount;
+
+        /**
+         * Encodes a chunk of bytes.
+         *
+         * @param bytes     Array holding the chunk.
+         * @param offset    Offset of the chunk in the array.
+         * @param length    Length of the chunk.
+         * @param dst       Array receiving the characters, at least {@code (length * 8 + 4) / 5 + 1} long.
+         * @param dstOffset Where to start writing.
+         * @return Number of characters written.
+         */
+        public int update(@Nonnull final byte[] bytes, final int offset, final int length, @Nonnull final char[] dst, final int dstOffset) {
+            int o = dstOffset;
+            for (int i = offset; i < offset + length; i++) {
+                o += this.update(bytes[i], dst, o);
+            }
+            return o - dstOffset;
+        }
+
+        private int update(final byte b, final char[] dst, int o) {
+            final int start = o;
+            this.bits = this.bits << 8 | b & 0xff;
+            this.bitCount += 8;
+            while (this.bitCount >= 5) {
+                this.bitCount -= 5;
+                dst[o++] = ALPHABET[this.bits >>> this.bitCount & 31];
+            }
+            this.bits &= (1 << this.bitCount) - 1;
+            return o - start;
+        }
+
+        /**
+         * Writes the last character, if the input didn't end on a character boundary, and resets the encoder.
+         *
+         * @param dst       Array receiving the character.
+         * @param dstOffset Where to write it.
+         * @return Number of characters written, 0 or 1.
+         */
+        public int finish(@Nonnull final char[] dst, final int dstOffset) {
+            final int written;
+            if (this.bitCount > 0) {
+                dst[dstOffset] = ALPHABET[this.bits << 5 - this.bitCount & 31];
+                written = 1;
+            } else {
+                written = 0;
+            }
+            this.bits = 0;
+            this.bitCount = 0;
+            return written;
+        }
+    }
+
+    /**
+     * Incremental Base32 decoder, for input that arrives in chunks. Not thread-safe.
+     *
+     * @since 1.1.0
+     */
+    public static final class Decoder {
+        private int bits;
+        private int bitCount;
+        private int chars;
+        private boolean padded;
+
+        /**
+         * Decodes a chunk of characters.
+         *
+         * @param base32    Array holding the chunk.
+         * @param offset    Offset of the chunk in the array.
+         * @param length    Length of the chunk.
+         * @param dst       Array receiving the bytes, at least {@code length * 5 / 8 + 1} long.
+         * @param dstOffset Where to start writing.
+         * @return Number of bytes written.
+         * @throws IllegalArgumentException If the chunk contains a character outside of the alphabet, or characters
+         *                                  after padding.
+         */
+        public int update(@Nonnull final char[] base32, final int offset, final int length, @Nonnull final byte[] dst, final int dstOffset) {
+            int o = dstOffset, invalid = 0;
+            for (int i = offset; i < offset + length; i++) {
+                final char c = base32[i];
+                if (c == '=') {
+                    this.padded = true;
+                    continue;
+                }
+                final int value = lookup(c);
+                invalid |= value | (this.padded ? -1 : 0);
+                this.chars++;
+                this.bits = this.bits << 5 | value & 31;
+                this.bitCount += 5;
+                if (this.bitCount >= 8) {
+                    this.bitCount -= 8;
+                    dst[o++] = (byte) (this.bits >>> this.bitCount);
+                    this.bits &= (1 << this.bitCount) - 1;
+                }
+            }
+            if (invalid < 0) {
+                throw new IllegalArgumentException("Invalid Base32 character");
+            }
+            return o - dstOffset;
+        }
+
+        /**
+         * Checks that the input had a valid length, and resets the decoder.
+         *
+         * @throws IllegalArgumentException If no Base32 string has the length of the input.
+         */
+        public void finish() {
+            final int length = this.chars;
+            this.bits = 0;
+            this.bitCount = 0;
+            this.chars = 0;
+            this.padded = false;
+            decodedLength(length);
         }
-        return -1;
     }
 }
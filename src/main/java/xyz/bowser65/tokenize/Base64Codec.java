@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import java.util.Arrays;
+
+/**
+ * Allocation-free Base64 routines working on raw byte arrays, used on the token hot paths.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+final class Base64Codec {
+    private static final byte[] ALPHABET = {
+            'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P',
+            'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f',
+            'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v',
+            'w', 'x', 'y', 'z', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '/'
+    };
+
+    private static final byte[] URL_SAFE_ALPHABET = ALPHABET.clone();
+
+    private static final byte[] LOOKUP = new byte[128], URL_SAFE_LOOKUP = new byte[128];
+
+    static {
+        URL_SAFE_ALPHABET[62] = '-';
+        URL_SAFE_ALPHABET[63] = '_';
+        Arrays.fill(LOOKUP, (byte) -1);
+        Arrays.fill(URL_SAFE_LOOKUP, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            LOOKUP[ALPHABET[i]] = (byte) i;
+            URL_SAFE_LOOKUP[URL_SAFE_ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private Base64Codec() {
+    }
+
+    /**
+     * @return Number of characters needed to encode {@code length} bytes.
+     */
+    static int encodedLength(final int length, final boolean pad) {
+        return pad ? (length + 2) / 3 * 4 : (length * 4 + 2) / 3;
+    }
+
+    /**
+     * @return Upper bound of the number of bytes {@code length} characters can decode to.
+     */
+    static int maxDecodedLength(final int length) {
+        return (length + 3) / 4 * 3;
+    }
+
+    /**
+     * Encodes {@code src[off..off+len)} into {@code dst} starting at {@code dstOff}.
+     *
+     * @return Number of characters written.
+     */
+    static int encode(final byte[] src, final int off, final int len, final byte[] dst, final int dstOff, final boolean pad) {
+        return encode(src, off, len, dst, dstOff, pad, ALPHABET);
+    }
+
+    /**
+     * Encodes {@code src[off..off+len)} with the URL and filename safe alphabet, without padding, into {@code dst}
+     * starting at {@code dstOff}.
+     *
+     * @return Number of characters written.
+     */
+    static int encodeUrlSafe(final byte[] src, final int off, final int len, final byte[] dst, final int dstOff) {
+        return encode(src, off, len, dst, dstOff, false, URL_SAFE_ALPHABET);
+    }
+
+    private static int encode(final byte[] src, final int off, final int len, final byte[] dst, final int dstOff,
+                              final boolean pad, final byte[] alphabet) {
+        final int end = off + len;
+        final int full = off + len / 3 * 3;
+        int s = off, d = dstOff;
+        while (s < full) {
+            final int bits = (src[s++] & 0xff) << 16 | (src[s++] & 0xff) << 8 | (src[s++] & 0xff);
+            dst[d++] = alphabet[bits >>> 18 & 0x3f];
+            dst[d++] = alphabet[bits >>> 12 & 0x3f];
+            dst[d++] = alphabet[bits >>> 6 & 0x3f];
+            dst[d++] = alphabet[bits & 0x3f];
+        }
+        final int remain = end - s;
+        if (remain > 0) {
+            final int bits = (src[s] & 0xff) << 10 | (remain == 2 ? (src[s + 1] & 0xff) << 2 : 0);
+            dst[d++] = alphabet[bits >>> 12];
+            dst[d++] = alphabet[bits >>> 6 & 0x3f];
+            if (remain == 2) {
+                dst[d++] = alphabet[bits & 0x3f];
+            } else if (pad) {
+                dst[d++] = '=';
+            }
+            if (pad) {
+                dst[d++] = '=';
+            }
+        }
+        return d - dstOff;
+    }
+
+    /**
+     * Decodes {@code src[off..off+len)} into {@code dst} starting at {@code dstOff}. Padding is optional.
+     *
+     * @return Number of bytes written, or {@code -1} if the input isn't valid Base64.
+     */
+    static int decode(final byte[] src, final int off, final int len, final byte[] dst, final int dstOff) {
+        return decode(src, off, len, dst, dstOff, LOOKUP, false);
+    }
+
+    /**
+     * Decodes {@code src[off..off+len)}, encoded with the URL and filename safe alphabet, into {@code dst} starting at
+     * {@code dstOff}. Padding is optional, but unused trailing bits must be zero so that each byte sequence has a
+     * single encoding.
+     *
+     * @return Number of bytes written, or {@code -1} if the input isn't valid Base64.
+     */
+    static int decodeUrlSafe(final byte[] src, final int off, final int len, final byte[] dst, final int dstOff) {
+        return decode(src, off, len, dst, dstOff, URL_SAFE_LOOKUP, true);
+    }
+
+    private static int decode(final byte[] src, final int off, int len, final byte[] dst, final int dstOff, final byte[] table,
+                              final boolean strict) {
+        if (len > 0 && (len & 3) == 0 && src[off + len - 1] == '=') {
+            len -= src[off + len - 2] == '=' ? 2 : 1;
+        }
+        if ((len & 3) == 1) {
+            return -1;
+        }
+
+        final int end = off + len;
+        final int full = off + (len & ~3);
+        int s = off, d = dstOff, invalid = 0;
+        while (s < full) {
+            final int bits = lookup(table, src[s++]) << 18 | lookup(table, src[s++]) << 12 | lookup(table, src[s++]) << 6 | lookup(table, src[s++]);
+            invalid |= bits;
+            dst[d++] = (byte) (bits >> 16);
+            dst[d++] = (byte) (bits >> 8);
+            dst[d++] = (byte) bits;
+        }
+        final int remain = end - s;
+        if (remain > 0) {
+            int bits = lookup(table, src[s]) << 18 | lookup(table, src[s + 1]) << 12;
+            if (remain == 3) {
+                bits |= lookup(table, src[s + 2]) << 6;
+            }
+            invalid |= bits;
+            if (strict && (bits & (remain == 3 ? 0xc0 : 0xf000)) != 0) {
+                return -1;
+            }
+            dst[d++] = (byte) (bits >> 16);
+            if (remain == 3) {
+                dst[d++] = (byte) (bits >> 8);
+            }
+        }
+        return invalid < 0 ? -1 : d - dstOff;
+    }
+
+    /**
+     * @return The 6-bit value of the character, or a negative value if it's not part of the alphabet.
+     */
+    private static int lookup(final byte[] table, final byte b) {
+        return b < 0 ? -1 : table[b];
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * {@link AsyncAccountFetcher} gathering the lookups arriving within a short window, and resolving them with a single
+ * call to an {@link AsyncBatchAccountFetcher}.
+ * <p>
+ * The number of pending lookups is bounded: once the bound is reached, new lookups fail right away with a
+ * {@link RejectedExecutionException}. Lookups that aren't answered in time fail with a {@link TimeoutException}, so a
+ * slow backend doesn't make futures pile up.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class BatchingAccountFetcher implements AsyncAccountFetcher, AutoCloseable {
+    private final AsyncBatchAccountFetcher delegate;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final long windowNanos;
+    private final long timeoutNanos;
+    private final int maxBatchSize;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Batch being gathered, guarded by {@code this}.
+     */
+    private Batch batch;
+    private boolean closed;
+
+    /**
+     * @param delegate     The batch account fetcher.
+     * @param window       How long to gather lookups before dispatching a batch.
+     * @param maxBatchSize Batches are dispatched as soon as they reach this many distinct IDs.
+     * @param maxPending   Maximum number of lookups waiting for their account.
+     * @param timeout      How long a lookup may wait for its account, counted from the opening of its batch.
+     */
+    public BatchingAccountFetcher(@Nonnull final AsyncBatchAccountFetcher delegate, @Nonnull final Duration window,
+                                  final int maxBatchSize, final int maxPending, @Nonnull final Duration timeout) {
+        this(delegate, window, maxBatchSize, maxPending, timeout, newScheduler(), true);
+    }
+
+    /**
+     * @param delegate     The batch account fetcher.
+     * @param window       How long to gather lookups before dispatching a batch.
+     * @param maxBatchSize Batches are dispatched as soon as they reach this many distinct IDs.
+     * @param maxPending   Maximum number of lookups waiting for their account.
+     * @param timeout      How long a lookup may wait for its account, counted from the opening of its batch.
+     * @param scheduler    Scheduler used to dispatch batches and time lookups out. It isn't shut down on close.
+     */
+    public BatchingAccountFetcher(@Nonnull final AsyncBatchAccountFetcher delegate, @Nonnull final Duration window,
+                                  final int maxBatchSize, final int maxPending, @Nonnull final Duration timeout,
+                                  @Nonnull final ScheduledExecutorService scheduler) {
+        this(delegate, window, maxBatchSize, maxPending, timeout, scheduler, false);
+    }
+
+    private BatchingAccountFetcher(final AsyncBatchAccountFetcher delegate, final Duration window, final int maxBatchSize,
+                                   final int maxPending, final Duration timeout, final ScheduledExecutorService scheduler,
+                                   final boolean ownsScheduler) {
+        if (maxBatchSize <= 0 || maxPending <= 0) {
+            throw new IllegalArgumentException("Batch size and pending lookups bounds must be positive");
+        }
+        this.delegate = delegate;
+        this.windowNanos = window.toNanos();
+        this.timeoutNanos = timeout.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.maxPending = maxPending;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    @Override
+    public CompletionStage<IAccount> fetchAccount(final String id) {
+        if (this.pending.incrementAndGet() > this.maxPending) {
+            this.pending.decrementAndGet();
+            return failed(new RejectedExecutionException("Too many pending account lookups"));
+        }
+
+        final CompletableFuture<IAccount> lookup;
+        Batch full = null;
+        synchronized (this) {
+            if (this.closed) {
+                this.pending.decrementAndGet();
+                return failed(new RejectedExecutionException("Fetcher is closed"));
+            }
+
+            if (this.batch == null) {
+                // Scheduled before being published, so that a rejecting scheduler can't leave a batch nobody sends
+                final Batch opened = new Batch();
+                try {
+                    opened.dispatchTimer = this.scheduler.schedule(() -> this.dispatch(opened), this.windowNanos, TimeUnit.NANOSECONDS);
+                    opened.timeoutTimer = this.scheduler.schedule(() -> this.timeout(opened), this.timeoutNanos, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    opened.cancelTimers();
+                    this.pending.decrementAndGet();
+                    return failed(e);
+                }
+                this.batch = opened;
+            }
+            lookup = this.batch.lookups.computeIfAbsent(id, k -> new CompletableFuture<>());
+            if (this.batch.lookups.size() >= this.maxBatchSize) {
+                full = this.batch;
+                full.dispatchTimer.cancel(false);
+                this.batch = null;
+            }
+        }
+
+        final CompletableFuture<IAccount> result = lookup.thenApply(Function.identity());
+        result.whenComplete((account, error) -> this.pending.decrementAndGet());
+        if (full != null) {
+            this.send(full);
+        }
+        return result;
+    }
+
+    /**
+     * Dispatches pending lookups and stops accepting new ones. Lookups already dispatched still complete.
+     */
+    @Override
+    public void close() {
+        final Batch last;
+        synchronized (this) {
+            this.closed = true;
+            last = this.batch;
+            this.batch = null;
+        }
+        if (last != null) {
+            last.dispatchTimer.cancel(false);
+            this.send(last);
+        }
+        if (this.ownsScheduler) {
+            this.scheduler.shutdown();
+        }
+    }
+
+    /**
+     * @return Number of lookups waiting for their account.
+     */
+    public int getPendingCount() {
+        return this.pending.get();
+    }
+
+    private void dispatch(final Batch opened) {
+        synchronized (this) {
+            if (this.batch != opened) {
+                return; // Already dispatched because it was full
+            }
+            this.batch = null;
+        }
+        this.send(opened);
+    }
+
+    private void send(final Batch batch) {
+        final Map<String, CompletableFuture<IAccount>> lookups = batch.lookups;
+        final CompletionStage<Map<String, IAccount>> accounts;
+        try {
+            accounts = this.delegate.fetchAccounts(Collections.unmodifiableSet(lookups.keySet()));
+        } catch (RuntimeException e) {
+            batch.timeoutTimer.cancel(false);
+            lookups.values().forEach(lookup -> lookup.completeExceptionally(e));
+            return;
+        }
+
+        accounts.whenComplete((found, error) -> {
+            // Answered: the timeout no longer needs to keep the lookups reachable
+            batch.timeoutTimer.cancel(false);
+            for (final Map.Entry<String, CompletableFuture<IAccount>> lookup : lookups.entrySet()) {
+                if (error != null) {
+                    lookup.getValue().completeExceptionally(error);
+                } else {
+                    lookup.getValue().complete(found == null ? null : found.get(lookup.getKey()));
+                }
+            }
+        });
+    }
+
+    private void timeout(final Batch batch) {
+        final CompletableFuture<?>[] snapshot;
+        synchronized (this) {
+            // The batch may still be gathering lookups if the timeout is shorter than the window
+            snapshot = batch.lookups.values().toArray(new CompletableFuture<?>[0]);
+        }
+        for (final CompletableFuture<?> lookup : snapshot) {
+            lookup.completeExceptionally(new TimeoutException("Account lookup timed out"));
+        }
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(r, "tokenize-batching-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Cancelled timers would otherwise keep their batch reachable until they're due
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private static <T> CompletionStage<T> failed(final Throwable error) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Lookups of a batch, with the timers sending it and timing it out.
+     */
+    private static final class Batch {
+        private final Map<String, CompletableFuture<IAccount>> lookups = new HashMap<>();
+        private ScheduledFuture<?> dispatchTimer, timeoutTimer;
+
+        private void cancelTimers() {
+            if (this.dispatchTimer != null) {
+                this.dispatchTimer.cancel(false);
+            }
+            if (this.timeoutTimer != null) {
+                this.timeoutTimer.cancel(false);
+            }
+        }
+    }
+}
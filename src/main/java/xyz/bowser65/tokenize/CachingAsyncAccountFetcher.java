@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * {@link AsyncAccountFetcher} decorator caching accounts for a while. Concurrent lookups of the same ID share a single
+ * call to the delegate, and unknown IDs are cached for a shorter time so that forged IDs don't reach the delegate
+ * on every request.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class CachingAsyncAccountFetcher implements AsyncAccountFetcher, InvalidationSubscriber {
+    private final AsyncAccountFetcher delegate;
+    private final AccountCache cache;
+
+    /**
+     * @param delegate    The account fetcher to call on cache misses.
+     * @param maximumSize Maximum number of cached accounts.
+     * @param ttl         How long found accounts are cached.
+     * @param negativeTtl How long unknown IDs are cached, {@link Duration#ZERO} to not cache them.
+     */
+    public CachingAsyncAccountFetcher(@Nonnull final AsyncAccountFetcher delegate, final int maximumSize, @Nonnull final Duration ttl, @Nonnull final Duration negativeTtl) {
+        this.delegate = delegate;
+        this.cache = new AccountCache(maximumSize, ttl, negativeTtl);
+    }
+
+    @Override
+    public CompletionStage<IAccount> fetchAccount(final String id) {
+        final IAccount cached = this.cache.get(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(AccountCache.unwrap(cached));
+        }
+
+        final CompletableFuture<IAccount> flight = new CompletableFuture<>();
+        final CompletableFuture<IAccount> running = this.cache.inFlight.putIfAbsent(id, flight);
+        if (running != null) {
+            // Dependent stage, so that callers can't complete the shared future
+            return running.thenApply(Function.identity());
+        }
+
+        final IAccount raced = this.cache.peek(id);
+        if (raced != null) {
+            this.cache.inFlight.remove(id, flight);
+            return CompletableFuture.completedFuture(AccountCache.unwrap(raced));
+        }
+
+        final long generation = this.cache.generation();
+        try {
+            this.delegate.fetchAccount(id).whenComplete((account, error) -> {
+                if (error != null) {
+                    this.cache.inFlight.remove(id, flight);
+                    flight.completeExceptionally(error);
+                } else {
+                    this.cache.store(id, account, generation);
+                    this.cache.inFlight.remove(id, flight);
+                    flight.complete(account);
+                }
+            });
+        } catch (RuntimeException e) {
+            this.cache.inFlight.remove(id, flight);
+            flight.completeExceptionally(e);
+        }
+        return flight.thenApply(Function.identity());
+    }
+
+    /**
+     * Evicts an account, for instance after its {@link IAccount#tokensValidSince()} changed.
+     *
+     * @param id ID of the account.
+     */
+    public void invalidate(@Nonnull final String id) {
+        this.cache.invalidate(id);
+    }
+
+    /**
+     * Evicts an account invalidated on an {@link InvalidationBus}.
+     */
+    @Override
+    public void onInvalidation(@Nonnull final String accountId, final long tokensValidSince) {
+        this.invalidate(accountId);
+    }
+
+    /**
+     * Evicts every account.
+     */
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    /**
+     * @return Approximate number of cached accounts, including unknown IDs.
+     */
+    public long size() {
+        return this.cache.size();
+    }
+
+    /**
+     * @return Number of lookups answered from the cache.
+     */
+    public long getHitCount() {
+        return this.cache.hitCount();
+    }
+
+    /**
+     * @return Number of lookups that weren't cached, including those that joined an in-flight fetch.
+     */
+    public long getMissCount() {
+        return this.cache.missCount();
+    }
+
+    /**
+     * @return Number of accounts evicted because the cache was full or because they expired.
+     */
+    public long getEvictionCount() {
+        return this.cache.evictionCount();
+    }
+}
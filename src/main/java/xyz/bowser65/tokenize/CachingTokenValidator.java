@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.security.SignatureException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Validates tokens through a {@link Tokenize} instance, remembering valid tokens for a while so that tokens sent
+ * repeatedly skip the HMAC computation and the account fetch.
+ * <p>
+ * Since the account is cached along with the token, revocations must be reported with
+ * {@link #invalidateAccount(String, long)}, or through an {@link InvalidationBus}, for them to take effect before
+ * the entries expire. Tokens revoked in the {@link RevocationStore} of the Tokenize instance are rejected right away,
+ * as cache hits are checked against it. Each call returns its own {@link Token}, which can be modified freely.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class CachingTokenValidator implements InvalidationSubscriber {
+    private final Tokenize tokenize;
+    private final ExpiringCache<String, Cached> cache;
+    /**
+     * Cached raw tokens of each account.
+     */
+    private final ConcurrentHashMap<String, Set<String>> tokensByAccount = new ConcurrentHashMap<>();
+    /**
+     * Bumped on every invalidation, so that validations racing with one don't cache what they fetched.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param tokenize    Tokenize instance used to validate tokens.
+     * @param maximumSize Maximum number of cached tokens.
+     * @param ttl         How long a token is cached after being validated, at most until it expires.
+     */
+    public CachingTokenValidator(@Nonnull final Tokenize tokenize, final int maximumSize, @Nonnull final Duration ttl) {
+        this.tokenize = tokenize;
+        this.cache = new ExpiringCache<>(maximumSize, ttl.toNanos(), TimeUnit.NANOSECONDS, this::onRemoval);
+    }
+
+    /**
+     * Validates a token synchronously, returning the cached token if it has been validated recently.
+     *
+     * @param token          The token to validate.
+     * @param accountFetcher The account fetcher used to retrieve the account on cache misses.
+     * @return The token, or {@code null} if there is no account associated or if the token has been revoked.
+     * @throws SignatureException If the token signature is invalid.
+     * @see Tokenize#validateToken(String, AccountFetcher)
+     */
+    @Nullable
+    public Token validateToken(@Nonnull final String token, @Nonnull final AccountFetcher accountFetcher) throws SignatureException {
+        final Cached cached = this.cache.get(token);
+        if (cached != null) {
+            if (!this.tokenize.isRevoked(cached.fingerprint)) {
+                return cached.token.copy();
+            }
+            // Validated again, so that the revocation is reported like on a miss
+            this.cache.remove(token);
+        }
+
+        final long generation = this.invalidations.get();
+        final Token validated = this.tokenize.validateToken(token, accountFetcher);
+        // Cached no longer than the token is valid, whatever the TTL
+        final long lifetime = validated == null ? 0 : this.tokenize.nanosUntilExpiry(validated.getGenTime(), validated.getExpiresAt());
+        if (lifetime > 0) {
+            final String id = validated.getAccount().getTokenId();
+            // Added within compute, so that onRemoval can't drop the set in between
+            this.tokensByAccount.compute(id, (k, tokens) -> {
+                final Set<String> set = tokens == null ? ConcurrentHashMap.newKeySet() : tokens;
+                set.add(token);
+                return set;
+            });
+            // A copy, so that the caller modifying its token doesn't change the cached one
+            this.cache.put(token, new Cached(validated.copy(), this.tokenize.revocationFingerprint(token)), lifetime);
+            if (this.invalidations.get() != generation) {
+                this.cache.remove(token);
+            }
+        }
+        return validated;
+    }
+
+    /**
+     * Evicts every cached token of an account.
+     *
+     * @param id ID of the account.
+     */
+    public void invalidateAccount(@Nonnull final String id) {
+        this.invalidateAccount(id, Long.MAX_VALUE);
+    }
+
+    /**
+     * Evicts the cached tokens of an account that are no longer valid since its
+     * {@link IAccount#tokensValidSince()} moved forward.
+     *
+     * @param id                ID of the account.
+     * @param tokensValidSince  The new Tokenize timestamp since when tokens are valid.
+     */
+    public void invalidateAccount(@Nonnull final String id, final long tokensValidSince) {
+        this.invalidations.incrementAndGet();
+        final Set<String> tokens = this.tokensByAccount.get(id);
+        if (tokens == null) {
+            return;
+        }
+        for (final String token : tokens) {
+            this.cache.removeIf(token, cached -> cached.token.getGenTime() <= tokensValidSince);
+        }
+    }
+
+    /**
+     * Evicts the cached tokens of an account invalidated on an {@link InvalidationBus}.
+     */
+    @Override
+    public void onInvalidation(@Nonnull final String accountId, final long tokensValidSince) {
+        this.invalidateAccount(accountId, tokensValidSince);
+    }
+
+    /**
+     * Evicts every cached token.
+     */
+    public void invalidateAll() {
+        this.invalidations.incrementAndGet();
+        this.cache.clear();
+    }
+
+    /**
+     * @return Approximate number of cached tokens.
+     */
+    public long size() {
+        return this.cache.size();
+    }
+
+    /**
+     * @return Number of validations answered from the cache.
+     */
+    public long getHitCount() {
+        return this.cache.hitCount();
+    }
+
+    /**
+     * @return Number of validations that went through {@link Tokenize}.
+     */
+    public long getMissCount() {
+        return this.cache.missCount();
+    }
+
+    /**
+     * @return Number of tokens evicted because the cache was full or because they expired.
+     */
+    public long getEvictionCount() {
+        return this.cache.evictionCount();
+    }
+
+    private void onRemoval(final String token, final Cached value) {
+        this.tokensByAccount.computeIfPresent(value.token.getAccount().getTokenId(), (id, tokens) -> {
+            tokens.remove(token);
+            return tokens.isEmpty() ? null : tokens;
+        });
+    }
+
+    private static final class Cached {
+        private final Token token;
+        /**
+         * Fingerprint the revocation store is checked with on hits.
+         */
+        private final long fingerprint;
+
+        private Cached(final Token token, final long fingerprint) {
+            this.token = token;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
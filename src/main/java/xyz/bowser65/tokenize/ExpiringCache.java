@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache with a time to live, evicting entries that weren't read recently. Keys are spread over segments;
+ * lookups don't lock, while writes and evictions lock the segment of their key.
+ * <p>
+ * Eviction approximates least recently used with a second chance: lookups mark their entry, and the oldest entry of a
+ * full segment is evicted unless it's marked, in which case it's unmarked and moved to the back.
+ *
+ * @param <K> Key type.
+ * @param <V> Value type.
+ * @author vinceh121
+ * @since 1.1.0
+ */
+final class ExpiringCache<K, V> {
+    private final Segment<K, V>[] segments;
+    private final int mask;
+    private final long ttlNanos;
+    private final BiConsumer<K, V> removalListener;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    /**
+     * @param maximumSize     Maximum number of entries, approximately enforced per segment.
+     * @param ttl             Time to live of the entries.
+     * @param unit            Unit of {@code ttl}.
+     * @param removalListener Called, under the segment lock, whenever an entry leaves the cache.
+     */
+    @SuppressWarnings("unchecked")
+    ExpiringCache(final int maximumSize, final long ttl, @Nonnull final TimeUnit unit, @Nullable final BiConsumer<K, V> removalListener) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("TTL must be positive");
+        }
+
+        int count = Integer.highestOneBit(Math.max(1, Math.min(64, Runtime.getRuntime().availableProcessors() * 4)));
+        while (count > 1 && maximumSize / count < 16) {
+            count >>= 1;
+        }
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment<>((maximumSize + count - 1) / count);
+        }
+        this.mask = count - 1;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * @return The cached value, or {@code null} if it's absent or expired.
+     */
+    @Nullable
+    V get(@Nonnull final K key) {
+        final Segment<K, V> segment = this.segment(key);
+        final Entry<V> entry = segment.entries.get(key);
+        if (entry != null) {
+            if (System.nanoTime() - entry.expiresAt < 0) {
+                if (!entry.accessed) {
+                    entry.accessed = true;
+                }
+                this.hits.increment();
+                return entry.value;
+            }
+            synchronized (segment) {
+                if (segment.remove(key, entry)) {
+                    this.evictions.increment();
+                    this.removed(key, entry.value);
+                }
+            }
+        }
+        this.misses.increment();
+        return null;
+    }
+
+    /**
+     * Same as {@link #get(Object)}, without touching the statistics nor the eviction order.
+     */
+    @Nullable
+    V peek(@Nonnull final K key) {
+        final Entry<V> entry = this.segment(key).entries.get(key);
+        return entry != null && System.nanoTime() - entry.expiresAt < 0 ? entry.value : null;
+    }
+
+    void put(@Nonnull final K key, @Nonnull final V value) {
+        this.put(key, value, this.ttlNanos);
+    }
+
+    /**
+     * Caches a value with its own time to live, capped to the cache's. Replacing a value doesn't notify the removal
+     * listener.
+     */
+    void put(@Nonnull final K key, @Nonnull final V value, final long ttlNanos) {
+        final Segment<K, V> segment = this.segment(key);
+        final Entry<V> entry = new Entry<>(value, System.nanoTime() + Math.min(ttlNanos, this.ttlNanos));
+        synchronized (segment) {
+            segment.order.remove(key);
+            segment.order.put(key, entry);
+            segment.entries.put(key, entry);
+            while (segment.order.size() > segment.capacity) {
+                this.evictEldest(segment);
+            }
+        }
+    }
+
+    @Nullable
+    V remove(@Nonnull final K key) {
+        final Segment<K, V> segment = this.segment(key);
+        synchronized (segment) {
+            final Entry<V> entry = segment.entries.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            segment.order.remove(key);
+            this.removed(key, entry.value);
+            return entry.value;
+        }
+    }
+
+    /**
+     * Removes an entry if its value matches a predicate, without touching the statistics.
+     *
+     * @return Whether the entry was removed.
+     */
+    boolean removeIf(@Nonnull final K key, @Nonnull final Predicate<V> predicate) {
+        final Segment<K, V> segment = this.segment(key);
+        synchronized (segment) {
+            final Entry<V> entry = segment.entries.get(key);
+            if (entry == null || !predicate.test(entry.value)) {
+                return false;
+            }
+            segment.remove(key, entry);
+            this.removed(key, entry.value);
+            return true;
+        }
+    }
+
+    void clear() {
+        for (final Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                final Iterator<Map.Entry<K, Entry<V>>> it = segment.order.entrySet().iterator();
+                while (it.hasNext()) {
+                    final Map.Entry<K, Entry<V>> e = it.next();
+                    it.remove();
+                    segment.entries.remove(e.getKey());
+                    this.removed(e.getKey(), e.getValue().value);
+                }
+            }
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (final Segment<K, V> segment : this.segments) {
+            size += segment.entries.size();
+        }
+        return size;
+    }
+
+    long hitCount() {
+        return this.hits.sum();
+    }
+
+    long missCount() {
+        return this.misses.sum();
+    }
+
+    long evictionCount() {
+        return this.evictions.sum();
+    }
+
+    private Segment<K, V> segment(final K key) {
+        final int h = key.hashCode();
+        return this.segments[(h ^ h >>> 16) & this.mask];
+    }
+
+    /**
+     * Evicts the oldest entry of a segment that wasn't read since it was last looked at, with its lock held.
+     */
+    private void evictEldest(final Segment<K, V> segment) {
+        final long now = System.nanoTime();
+        for (;;) {
+            final Iterator<Map.Entry<K, Entry<V>>> it = segment.order.entrySet().iterator();
+            final Map.Entry<K, Entry<V>> eldest = it.next();
+            final K key = eldest.getKey();
+            final Entry<V> entry = eldest.getValue();
+            it.remove();
+            if (entry.accessed && now - entry.expiresAt < 0) {
+                // Second chance: every entry is unmarked once, so this ends within a round
+                entry.accessed = false;
+                segment.order.put(key, entry);
+                continue;
+            }
+            segment.entries.remove(key);
+            this.evictions.increment();
+            this.removed(key, entry.value);
+            return;
+        }
+    }
+
+    private void removed(final K key, final V value) {
+        if (this.removalListener != null) {
+            this.removalListener.accept(key, value);
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+        /**
+         * Set by lookups, cleared when the entry gets a second chance.
+         */
+        private volatile boolean accessed;
+
+        private Entry(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        /**
+         * Read without locking.
+         */
+        private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+        /**
+         * Same entries in eviction order, guarded by the segment.
+         */
+        private final LinkedHashMap<K, Entry<V>> order = new LinkedHashMap<>();
+        private final int capacity;
+
+        private Segment(final int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Removes an entry if it's still mapped to its key, with the segment lock held.
+         */
+        private boolean remove(final K key, final Entry<V> entry) {
+            if (!this.entries.remove(key, entry)) {
+                return false;
+            }
+            this.order.remove(key);
+            return true;
+        }
+    }
+}
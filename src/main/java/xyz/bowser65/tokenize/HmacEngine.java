@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Pre-keyed HMAC engine. The key is scheduled once, and each thread gets its own {@link Mac} cloned from a keyed
+ * prototype, so signing doesn't go through provider lookup nor contend on a shared instance.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+final class HmacEngine {
+    private final SecretKeySpec key;
+    private final Mac prototype;
+    private final byte[] domain;
+    private final ThreadLocal<Mac> local = ThreadLocal.withInitial(this::newMac);
+
+    /**
+     * @param algorithm HMAC algorithm name.
+     * @param secret    Secret key.
+     * @param domain    Constant bytes fed before every message, may be empty.
+     */
+    HmacEngine(@Nonnull final String algorithm, @Nonnull final byte[] secret, @Nonnull final byte[] domain) {
+        this.key = new SecretKeySpec(secret, algorithm);
+        this.domain = domain.clone();
+        try {
+            this.prototype = Mac.getInstance(algorithm);
+            this.prototype.init(this.key);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Tokenize is unable to function if " + algorithm + " algorithm isn't present!", e);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("Invalid " + algorithm + " key", e);
+        }
+    }
+
+    /**
+     * @return Length of the produced MACs, in bytes.
+     */
+    int macLength() {
+        return this.prototype.getMacLength();
+    }
+
+    /**
+     * @return The calling thread's {@link Mac}, keyed and fed with the domain bytes.
+     */
+    @Nonnull
+    Mac mac() {
+        return this.mac(this.domain);
+    }
+
+    /**
+     * @param domain Constant bytes to feed instead of the engine's domain.
+     * @return The calling thread's {@link Mac}, keyed and fed with {@code domain}.
+     */
+    @Nonnull
+    Mac mac(@Nonnull final byte[] domain) {
+        final Mac mac = this.local.get();
+        mac.update(domain);
+        return mac;
+    }
+
+    /**
+     * Computes the HMAC of the domain bytes followed by {@code data[offset..offset+length)}.
+     *
+     * @param out       Array receiving the MAC.
+     * @param outOffset Where to write the MAC in {@code out}.
+     */
+    void sign(final byte[] data, final int offset, final int length, final byte[] out, final int outOffset) {
+        this.sign(this.domain, data, offset, length, out, outOffset);
+    }
+
+    /**
+     * Computes the HMAC of {@code domain} followed by {@code data[offset..offset+length)}.
+     *
+     * @param out       Array receiving the MAC.
+     * @param outOffset Where to write the MAC in {@code out}.
+     */
+    void sign(final byte[] domain, final byte[] data, final int offset, final int length, final byte[] out, final int outOffset) {
+        final Mac mac = this.mac(domain);
+        // Reset on failure, so that the bytes already fed don't end up in the next MAC of this thread
+        try {
+            mac.update(data, offset, length);
+            mac.doFinal(out, outOffset);
+        } catch (ShortBufferException e) {
+            mac.reset();
+            throw new IllegalArgumentException("Output buffer too small for the MAC", e);
+        } catch (RuntimeException e) {
+            mac.reset();
+            throw e;
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) this.prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            // Provider doesn't support cloning, key a fresh instance for this thread instead
+            try {
+                final Mac mac = Mac.getInstance(this.prototype.getAlgorithm(), this.prototype.getProvider());
+                mac.init(this.key);
+                return mac;
+            } catch (NoSuchAlgorithmException | InvalidKeyException ex) {
+                throw new IllegalStateException("is this ever reachable?", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * {@link InvalidationBus} delivering invalidations to the subscribers of this instance only, for single-node setups
+ * and tests.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class InMemoryInvalidationBus extends AbstractInvalidationBus {
+    /**
+     * @param window       How long to gather invalidations before delivering a batch.
+     * @param maxBatchSize Batches are delivered as soon as they reach this many distinct accounts.
+     */
+    public InMemoryInvalidationBus(@Nonnull final Duration window, final int maxBatchSize) {
+        super(window, maxBatchSize);
+    }
+
+    /**
+     * @param window       How long to gather invalidations before delivering a batch.
+     * @param maxBatchSize Batches are delivered as soon as they reach this many distinct accounts.
+     * @param scheduler    Scheduler used to deliver batches. It isn't shut down on close.
+     */
+    public InMemoryInvalidationBus(@Nonnull final Duration window, final int maxBatchSize, @Nonnull final ScheduledExecutorService scheduler) {
+        super(window, maxBatchSize, scheduler);
+    }
+
+    @Override
+    protected void transmit(@Nonnull final Map<String, Long> batch) {
+        for (final Map.Entry<String, Long> invalidation : batch.entrySet()) {
+            this.deliver(invalidation.getKey(), invalidation.getValue());
+        }
+    }
+}
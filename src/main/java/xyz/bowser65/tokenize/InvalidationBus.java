@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Broadcasts account invalidations to the caches of every node, so that a change of
+ * {@link IAccount#tokensValidSince()} takes effect everywhere before cached entries expire. The caching fetchers and
+ * {@link CachingTokenValidator} are {@link InvalidationSubscriber}s, to be subscribed to the bus of their node.
+ * <p>
+ * Invalidations may be delayed by a short batching window. How reliably they're delivered depends on the bus:
+ * {@link InMemoryInvalidationBus} delivers each batch to the subscribers of its node synchronously, while
+ * {@link UdpInvalidationBus} is best effort, with neither acknowledgements nor retransmissions, and only counts the
+ * batches it failed to send. Callers can't rely on the bus alone to revoke tokens: a
+ * {@link Tokenize.Builder#maxAge(java.time.Duration) max age}, a cache TTL, or moving
+ * {@link IAccount#tokensValidSince()} in the account store bound how long a lost invalidation goes unnoticed.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ * @see InMemoryInvalidationBus
+ * @see UdpInvalidationBus
+ */
+public interface InvalidationBus extends AutoCloseable {
+    /**
+     * Broadcasts the invalidation of an account.
+     *
+     * @param accountId        ID of the account.
+     * @param tokensValidSince New {@link IAccount#tokensValidSince()} of the account.
+     */
+    void publish(@Nonnull String accountId, long tokensValidSince);
+
+    /**
+     * @param subscriber Subscriber to deliver invalidations to, from now on.
+     */
+    void subscribe(@Nonnull InvalidationSubscriber subscriber);
+
+    /**
+     * @param subscriber Subscriber to stop delivering invalidations to.
+     */
+    void unsubscribe(@Nonnull InvalidationSubscriber subscriber);
+
+    /**
+     * Sends the invalidations still being batched and releases the resources of the bus.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Set of secrets used to sign and validate keyed tokens (TTF {@value Tokenize#KEYED_VERSION}). Each secret has a
+ * short ID embedded in the tokens it signs, so validation picks the right key directly. One of the keys is the
+ * active one, used to sign new tokens.
+ * <p>
+ * Keys can be added, activated and retired at runtime. Changes are copy-on-write: lookups on the validation path
+ * never take a lock.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class Keyring {
+    /**
+     * Maximum length of a key ID.
+     */
+    public static final int MAX_KEY_ID_LENGTH = 8;
+
+    private volatile State state;
+
+    /**
+     * @param activeKeyId ID of the initial key, which is the active one.
+     * @param secret      Secret of the initial key.
+     */
+    public Keyring(@Nonnull final String activeKeyId, @Nonnull final byte[] secret) {
+        final Key key = new Key(activeKeyId, secret);
+        this.state = new State(new Key[]{key}, key);
+    }
+
+    /**
+     * Adds a key, or replaces the secret of an existing one.
+     *
+     * @param id     ID of the key. 1 to {@value #MAX_KEY_ID_LENGTH} characters among {@code A-Z a-z 0-9 - _}.
+     * @param secret Secret of the key.
+     */
+    public synchronized void addKey(@Nonnull final String id, @Nonnull final byte[] secret) {
+        final Key key = new Key(id, secret);
+        final State current = this.state;
+        final List<Key> keys = new ArrayList<>();
+        for (final Key k : current.keys) {
+            if (k.packedId != key.packedId) {
+                keys.add(k);
+            }
+        }
+        keys.add(key);
+        this.state = new State(keys.toArray(new Key[0]), current.active.packedId == key.packedId ? key : current.active);
+    }
+
+    /**
+     * Makes a key the one used to sign new tokens.
+     *
+     * @param id ID of the key.
+     * @throws IllegalArgumentException If there is no such key.
+     */
+    public synchronized void activate(@Nonnull final String id) {
+        final State current = this.state;
+        final Key key = current.find(pack(id));
+        if (key == null) {
+            throw new IllegalArgumentException("Unknown key " + id);
+        }
+        this.state = new State(current.keys, key);
+    }
+
+    /**
+     * Retires a key. Tokens it signed no longer validate.
+     *
+     * @param id ID of the key.
+     * @throws IllegalStateException If the key is the active one.
+     */
+    public synchronized void removeKey(@Nonnull final String id) {
+        final State current = this.state;
+        final long packed = pack(id);
+        if (current.active.packedId == packed) {
+            throw new IllegalStateException("Cannot remove the active key, activate another one first");
+        }
+        final List<Key> keys = new ArrayList<>();
+        for (final Key k : current.keys) {
+            if (k.packedId != packed) {
+                keys.add(k);
+            }
+        }
+        this.state = new State(keys.toArray(new Key[0]), current.active);
+    }
+
+    /**
+     * @return ID of the key used to sign new tokens.
+     */
+    @Nonnull
+    public String getActiveKeyId() {
+        return this.state.active.id;
+    }
+
+    /**
+     * @return IDs of the keys tokens are validated with.
+     */
+    @Nonnull
+    public List<String> getKeyIds() {
+        final List<String> ids = new ArrayList<>();
+        for (final Key key : this.state.keys) {
+            ids.add(key.id);
+        }
+        return Collections.unmodifiableList(ids);
+    }
+
+    @Nonnull
+    Key activeKey() {
+        return this.state.active;
+    }
+
+    /**
+     * Looks a key up by the ID stored in {@code src[offset..offset+length)}.
+     *
+     * @return The key, or {@code null} if there is no such key.
+     */
+    @Nullable
+    Key find(@Nonnull final byte[] src, final int offset, final int length) {
+        if (length <= 0 || length > MAX_KEY_ID_LENGTH) {
+            return null;
+        }
+        long packed = 0;
+        for (int i = 0; i < length; i++) {
+            packed = packed << 8 | (src[offset + i] & 0xff);
+        }
+        return this.state.find(packed);
+    }
+
+    /**
+     * Packs an ID into a long, one byte per character, so that lookups compare a single value.
+     */
+    private static long pack(@Nonnull final String id) {
+        final int length = id.length();
+        if (length == 0 || length > MAX_KEY_ID_LENGTH) {
+            throw new IllegalArgumentException("Key ID must be 1 to " + MAX_KEY_ID_LENGTH + " characters long");
+        }
+        long packed = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = id.charAt(i);
+            if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                throw new IllegalArgumentException("Invalid character in key ID: " + c);
+            }
+            packed = packed << 8 | c;
+        }
+        return packed;
+    }
+
+    static final class Key {
+        final String id;
+        final byte[] rawId;
+        final long packedId;
+        final HmacEngine hmac;
+
+        private Key(final String id, final byte[] secret) {
+            this.id = id;
+            this.packedId = pack(id);
+            this.rawId = id.getBytes(StandardCharsets.US_ASCII);
+            this.hmac = new HmacEngine("HmacSHA256", secret,
+                    ("TTF." + Tokenize.KEYED_VERSION + "." + id + ".").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static final class State {
+        private final Key[] keys;
+        private final Key active;
+
+        private State(final Key[] keys, final Key active) {
+            this.keys = keys;
+            this.active = active;
+        }
+
+        private Key find(final long packedId) {
+            // Keyrings hold a handful of keys, a scan over packed IDs beats hashing
+            for (final Key key : this.keys) {
+                if (key.packedId == packedId) {
+                    return key;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of latencies: each power of two is split into 4 buckets, so a bucket is at most 25%
+ * wide. Buckets are striped by thread so that concurrent recordings rarely hit the same cache line.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+final class LatencyHistogram {
+    /**
+     * Values 0 to 3 get a bucket each, then 4 buckets per power of two up to 2^63.
+     */
+    static final int BUCKETS = 4 + 61 * 4;
+
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        final int stripe = (int) Thread.currentThread().getId() & STRIPES - 1;
+        this.counts.getAndIncrement(stripe * BUCKETS + bucket(nanos));
+        this.sum.add(nanos);
+        this.max.accumulate(nanos);
+    }
+
+    /**
+     * @return Count of each bucket, summed over the stripes.
+     */
+    long[] bucketCounts() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < STRIPES * BUCKETS; i++) {
+            counts[i % BUCKETS] += this.counts.get(i);
+        }
+        return counts;
+    }
+
+    long sum() {
+        return this.sum.sum();
+    }
+
+    long max() {
+        return this.max.get();
+    }
+
+    static int bucket(final long value) {
+        if (value < 4) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - 1) * 4 + (int) (value >>> exponent - 2 & 3);
+    }
+
+    /**
+     * @return The largest value falling into {@code bucket}.
+     */
+    static long upperBound(final int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        final int exponent = bucket / 4 + 1;
+        final long lower = (long) (4 + bucket % 4) << exponent - 2;
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lower + (1L << exponent - 2) - 1;
+    }
+}
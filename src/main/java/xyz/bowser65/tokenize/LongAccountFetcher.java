@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+/**
+ * {@link AccountFetcher} of accounts identified by a {@code long}, see {@link LongIdAccount}. Tokenize hands it the
+ * ID of tokens as a {@code long}, decoded without building a {@link String}.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+@FunctionalInterface
+public interface LongAccountFetcher extends AccountFetcher {
+    IAccount fetchAccount(long id);
+
+    /**
+     * Fetches an account by the decimal form of its ID.
+     *
+     * @return The account, or {@code null} if the ID isn't the canonical decimal form of a {@code long}.
+     */
+    @Override
+    default IAccount fetchAccount(final String id) {
+        final long value;
+        try {
+            value = Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        // "007" or "+7" aren't the ID of account 7
+        return Long.toString(value).equals(id) ? this.fetchAccount(value) : null;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Point-in-time copy of the outcome counts and phase latencies of a {@link ValidationMetrics}.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public final class MetricsSnapshot {
+    private final long[] outcomes;
+    private final Latency[] latencies;
+
+    MetricsSnapshot(final long[] outcomes, final Latency[] latencies) {
+        this.outcomes = outcomes;
+        this.latencies = latencies;
+    }
+
+    /**
+     * @param status An outcome.
+     * @return Number of validations that had this outcome.
+     */
+    public long getCount(@Nonnull final ValidationResult.Status status) {
+        return this.outcomes[status.ordinal()];
+    }
+
+    /**
+     * @return Number of validations that reported an outcome.
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (final long count : this.outcomes) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param phase A validation phase.
+     * @return Latency distribution of the phase.
+     */
+    @Nonnull
+    public Latency getLatency(@Nonnull final ValidationPhase phase) {
+        return this.latencies[phase.ordinal()];
+    }
+
+    /**
+     * Latency distribution of a phase, in nanoseconds. Values are bucketed, each power of two being split into 4
+     * buckets; percentiles are the upper bound of the bucket they fall in.
+     */
+    public static final class Latency {
+        private final long[] buckets;
+        @Getter
+        private final long count;
+        @Getter
+        private final long totalNanos;
+        @Getter
+        private final long maxNanos;
+
+        Latency(final long[] buckets, final long totalNanos, final long maxNanos) {
+            this.buckets = buckets;
+            long count = 0;
+            for (final long bucket : buckets) {
+                count += bucket;
+            }
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * @return Mean latency, 0 if nothing was recorded.
+         */
+        public double getMeanNanos() {
+            return this.count == 0 ? 0 : (double) this.totalNanos / this.count;
+        }
+
+        /**
+         * @param quantile Between 0 and 1, e.g. 0.99 for the 99th percentile.
+         * @return Latency under which this quantile of the recorded values falls, 0 if nothing was recorded.
+         */
+        public long getPercentileNanos(final double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1");
+            }
+            final long rank = (long) Math.ceil(quantile * this.count);
+            long seen = 0;
+            for (int i = 0; i < this.buckets.length; i++) {
+                seen += this.buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(LatencyHistogram.upperBound(i), this.maxNanos);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return Number of buckets, for exporters that need the whole distribution.
+         */
+        public int getBucketCount() {
+            return this.buckets.length;
+        }
+
+        /**
+         * @param bucket Index of a bucket.
+         * @return Number of values recorded in the bucket.
+         */
+        public long getBucketValue(final int bucket) {
+            return this.buckets[bucket];
+        }
+
+        /**
+         * @param bucket Index of a bucket.
+         * @return Largest latency falling in the bucket, in nanoseconds.
+         */
+        public long getBucketUpperBound(final int bucket) {
+            return LatencyHistogram.upperBound(bucket);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * {@link AsyncAccountFetcher} running a blocking {@link AccountFetcher} off the caller's thread, so that blocking
+ * account stores can be used with asynchronous validation.
+ * <p>
+ * Fetches run on virtual threads when the JVM has them (Java 21 and later), and otherwise on a pool growing up to the
+ * concurrency limit and shrinking when idle. Either way, the number of fetches running at once is bounded: once the
+ * bound is reached, new lookups fail right away with a {@link RejectedExecutionException}. Lookups that aren't
+ * answered in time fail with a {@link TimeoutException}; the blocking call isn't interrupted, and counts against the
+ * bound until it returns.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class OffloadingAccountFetcher implements AsyncAccountFetcher, AutoCloseable {
+    private final AccountFetcher delegate;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsExecutors;
+    private final boolean virtual;
+    private final int maxConcurrent;
+    private final long timeoutNanos;
+    private final Semaphore permits;
+    private volatile boolean closed;
+
+    /**
+     * @param delegate      The blocking account fetcher.
+     * @param maxConcurrent Maximum number of fetches running at once.
+     * @param timeout       How long a lookup may wait for its account.
+     */
+    public OffloadingAccountFetcher(@Nonnull final AccountFetcher delegate, final int maxConcurrent, @Nonnull final Duration timeout) {
+        this(delegate, maxConcurrent, timeout, newVirtualThreadExecutor(), newScheduler());
+    }
+
+    /**
+     * @param delegate      The blocking account fetcher.
+     * @param maxConcurrent Maximum number of fetches running at once.
+     * @param timeout       How long a lookup may wait for its account.
+     * @param executor      Executor the fetches run on. It isn't shut down on close.
+     * @param scheduler     Scheduler used to time lookups out. It isn't shut down on close.
+     */
+    public OffloadingAccountFetcher(@Nonnull final AccountFetcher delegate, final int maxConcurrent, @Nonnull final Duration timeout,
+                                    @Nonnull final Executor executor, @Nonnull final ScheduledExecutorService scheduler) {
+        this(delegate, maxConcurrent, timeout, executor, scheduler, false, false);
+    }
+
+    private OffloadingAccountFetcher(final AccountFetcher delegate, final int maxConcurrent, final Duration timeout,
+                                     @Nullable final ExecutorService virtualThreads, final ScheduledExecutorService scheduler) {
+        this(delegate, maxConcurrent, timeout, virtualThreads != null ? virtualThreads : newElasticPool(maxConcurrent),
+                scheduler, true, virtualThreads != null);
+    }
+
+    private OffloadingAccountFetcher(final AccountFetcher delegate, final int maxConcurrent, final Duration timeout,
+                                     final Executor executor, final ScheduledExecutorService scheduler,
+                                     final boolean ownsExecutors, final boolean virtual) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("Concurrency limit must be positive");
+        }
+        this.delegate = delegate;
+        this.maxConcurrent = maxConcurrent;
+        this.timeoutNanos = timeout.toNanos();
+        this.permits = new Semaphore(maxConcurrent);
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.ownsExecutors = ownsExecutors;
+        this.virtual = virtual;
+    }
+
+    @Override
+    public CompletionStage<IAccount> fetchAccount(final String id) {
+        if (this.closed) {
+            return failed(new RejectedExecutionException("Fetcher is closed"));
+        }
+        if (!this.permits.tryAcquire()) {
+            return failed(new RejectedExecutionException("Too many concurrent account lookups"));
+        }
+
+        final CompletableFuture<IAccount> lookup = new CompletableFuture<>();
+        try {
+            this.executor.execute(() -> {
+                try {
+                    if (!lookup.isDone()) {
+                        lookup.complete(this.delegate.fetchAccount(id));
+                    }
+                } catch (Throwable e) {
+                    lookup.completeExceptionally(e);
+                } finally {
+                    this.permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.permits.release();
+            return failed(e);
+        }
+
+        if (!lookup.isDone()) {
+            try {
+                final ScheduledFuture<?> timer = this.scheduler.schedule(
+                        () -> lookup.completeExceptionally(new TimeoutException("Account lookup timed out")),
+                        this.timeoutNanos, TimeUnit.NANOSECONDS);
+                lookup.whenComplete((account, error) -> timer.cancel(false));
+            } catch (RejectedExecutionException e) {
+                // The fetch keeps its permit until it returns, like a timed out one
+                lookup.completeExceptionally(e);
+            }
+        }
+        // A dependent stage, so that callers can't complete the lookup and cancel its timer
+        return lookup.thenApply(Function.identity());
+    }
+
+    /**
+     * Stops accepting new lookups. Lookups already running still complete.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        if (this.ownsExecutors) {
+            ((ExecutorService) this.executor).shutdown();
+            this.scheduler.shutdown();
+        }
+    }
+
+    /**
+     * @return Whether fetches run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    /**
+     * @return Number of fetches running, including timed out ones that didn't return yet.
+     */
+    public int getRunningCount() {
+        return this.maxConcurrent - this.permits.availablePermits();
+    }
+
+    /**
+     * @return An executor starting a virtual thread per task, or {@code null} if the JVM doesn't have virtual threads.
+     */
+    @Nullable
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Before Java 21, or disabled preview feature
+            return null;
+        }
+    }
+
+    private static ExecutorService newElasticPool(final int maxConcurrent) {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            final Thread thread = new Thread(r, "tokenize-fetcher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(r, "tokenize-fetcher-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private static <T> CompletionStage<T> failed(final Throwable error) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+}
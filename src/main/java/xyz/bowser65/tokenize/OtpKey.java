@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Shared secret of a one-time password generator, decoded and keyed once. Obtained from
+ * {@link OtpVerifier#key(String)} and meant to be kept for as long as the secret is, so that verifications neither
+ * decode the secret nor schedule the HMAC key again.
+ * <p>
+ * Codes of the last few steps are remembered, so that the overlapping drift windows of consecutive verifications
+ * don't compute the same HMACs again. A key must therefore only be used with the verifier that created it.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public final class OtpKey {
+    private static final byte[] FINGERPRINT_LABEL = "OTP.replay".getBytes(StandardCharsets.US_ASCII);
+
+    final HmacEngine hmac;
+    final long fingerprint;
+    /**
+     * Memoized codes, {@code (step + 1) << 32 | code} at index {@code step & mask}, 0 when empty.
+     */
+    private final AtomicLongArray codes;
+    private final int mask;
+
+    OtpKey(@Nonnull final OtpAlgorithm algorithm, @Nonnull final byte[] secret, final int memoSize) {
+        this.hmac = new HmacEngine(algorithm.getMacAlgorithm(), secret, new byte[0]);
+        this.codes = new AtomicLongArray(memoSize);
+        this.mask = memoSize - 1;
+
+        // Derived from the secret rather than the instance, so that replays are caught across keys of a same secret
+        final byte[] mac = new byte[this.hmac.macLength()];
+        this.hmac.sign(FINGERPRINT_LABEL, 0, FINGERPRINT_LABEL.length, mac, 0);
+        long fingerprint = 0;
+        for (int i = 0; i < 8; i++) {
+            fingerprint = fingerprint << 8 | mac[i] & 0xff;
+        }
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return The memoized code of {@code step}, or {@code -1} if it isn't known.
+     */
+    int memoized(final long step) {
+        if (step < 0 || step >= Integer.MAX_VALUE) {
+            return -1;
+        }
+        final long packed = this.codes.get((int) step & this.mask);
+        return packed >>> 32 == step + 1 ? (int) packed : -1;
+    }
+
+    void memoize(final long step, final int code) {
+        if (step >= 0 && step < Integer.MAX_VALUE) {
+            this.codes.lazySet((int) step & this.mask, (step + 1) << 32 | code);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Set of the one-time password steps already used, bucketed by step. Buckets live in a ring just long enough to
+ * outlast the drift window; a bucket is evicted in O(1) by swapping in a fresh one when its slot is reused by a newer
+ * step. Entries are 64-bit fingerprints of key and step in lock-free open-addressed tables.
+ * <p>
+ * A step is only accepted if it's later than every step the key used before, so that a code of the window can't be
+ * used once a later one was. The last accepted step of a key is the newest bucket holding it, since the ring outlasts
+ * the distance between any two steps of the drift windows.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+final class OtpReplayCache {
+    private final AtomicReferenceArray<Bucket> ring;
+    private final int ringMask;
+    private final int tableSize;
+
+    /**
+     * @param window   Drift window of the verifier, in steps.
+     * @param capacity Expected number of verifications per step.
+     */
+    OtpReplayCache(final int window, final int capacity) {
+        final int ringSize = Integer.highestOneBit(2 * window + 1) << 1;
+        this.ring = new AtomicReferenceArray<>(ringSize);
+        this.ringMask = ringSize - 1;
+        this.tableSize = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) << 1;
+    }
+
+    /**
+     * Records the use of {@code step} by the key of fingerprint {@code key}.
+     *
+     * @return {@code false} if it or a later step was already used, or if it's too old to be tracked anymore.
+     */
+    boolean markUsed(final long key, final long step) {
+        if (!this.add(key, step)) {
+            return false;
+        }
+        // Checked after adding, so that of two concurrent uses, the earlier step sees the later one
+        for (long s = step + 1; s <= step + this.ringMask; s++) {
+            final Bucket bucket = this.ring.get((int) s & this.ringMask);
+            if (bucket != null && bucket.step == s && bucket.contains(fingerprint(key, s))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean add(final long key, final long step) {
+        final int index = (int) step & this.ringMask;
+        Bucket bucket = this.ring.get(index);
+        while (bucket == null || bucket.step < step) {
+            final Bucket fresh = new Bucket(step, this.tableSize);
+            if (this.ring.compareAndSet(index, bucket, fresh)) {
+                bucket = fresh;
+            } else {
+                bucket = this.ring.get(index);
+            }
+        }
+        return bucket.step == step && bucket.add(fingerprint(key, step));
+    }
+
+    private static long fingerprint(final long key, final long step) {
+        return mix(key ^ step * 0x9e3779b97f4a7c15L);
+    }
+
+    private static long mix(long h) {
+        h = (h ^ h >>> 33) * 0xff51afd7ed558ccdL;
+        h = (h ^ h >>> 33) * 0xc4ceb3fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private static final class Bucket {
+        private final long step;
+        private final AtomicLongArray table;
+        private final int mask;
+        /**
+         * Takes the entries whose probe range is full, when more codes than expected are used in a step. Slots are
+         * never cleared, so an entry that went there can't be added to the table later.
+         */
+        private final Set<Long> overflow = ConcurrentHashMap.newKeySet();
+
+        private Bucket(final long step, final int size) {
+            this.step = step;
+            this.table = new AtomicLongArray(size);
+            this.mask = size - 1;
+        }
+
+        private boolean add(final long fingerprint) {
+            // Only half of the table is probed so that lookups stay short once it fills up
+            final int probes = (this.mask + 1) >>> 1;
+            int i = (int) fingerprint & this.mask;
+            for (int p = 0; p < probes; p++, i = i + 1 & this.mask) {
+                final long current = this.table.get(i);
+                if (current == fingerprint) {
+                    return false;
+                }
+                if (current == 0) {
+                    if (this.table.compareAndSet(i, 0, fingerprint)) {
+                        return true;
+                    }
+                    if (this.table.get(i) == fingerprint) {
+                        return false;
+                    }
+                }
+            }
+            return this.overflow.add(fingerprint);
+        }
+
+        private boolean contains(final long fingerprint) {
+            final int probes = (this.mask + 1) >>> 1;
+            int i = (int) fingerprint & this.mask;
+            for (int p = 0; p < probes; p++, i = i + 1 & this.mask) {
+                final long current = this.table.get(i);
+                if (current == fingerprint) {
+                    return true;
+                }
+                if (current == 0) {
+                    // Entries only overflow once their whole probe range is taken
+                    return false;
+                }
+            }
+            return this.overflow.contains(fingerprint);
+        }
+    }
+}
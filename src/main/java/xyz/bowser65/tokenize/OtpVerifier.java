@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * HOTP (RFC 4226) and TOTP (RFC 6238) one-time password verifier. Thread-safe, and doesn't allocate when verifying.
+ * <p>
+ * TOTP codes are accepted within a drift window of a few steps around the current one, and each step can only be
+ * used once per secret: a replayed code is rejected even if it's still within the window, and so is the code of a
+ * step earlier than one already used.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class OtpVerifier {
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[8 + 64]);
+
+    @Getter
+    private final OtpAlgorithm algorithm;
+    @Getter
+    private final int digits;
+    private final int modulus;
+    private final long periodMillis;
+    @Getter
+    private final int window;
+    private final Clock clock;
+    private final OtpReplayCache replays;
+    private final int memoSize;
+
+    private OtpVerifier(final Builder builder) {
+        this.algorithm = builder.algorithm;
+        this.digits = builder.digits;
+        this.modulus = POWERS_OF_TEN[builder.digits];
+        this.periodMillis = builder.period.toMillis();
+        this.window = builder.window;
+        this.clock = builder.clock;
+        this.replays = new OtpReplayCache(builder.window, builder.replayCapacity);
+        this.memoSize = Integer.highestOneBit(2 * builder.window + 1) << 1;
+    }
+
+    /**
+     * @return A builder of verifiers, by default of 6 digits SHA1 codes changing every 30 seconds, with a drift
+     * window of 1 step.
+     */
+    @Nonnull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param base32Secret Shared secret, Base32 encoded as in provisioning URIs.
+     * @return The key, to keep for as long as the secret is.
+     * @throws IllegalArgumentException If the secret isn't valid Base32.
+     */
+    @Nonnull
+    public OtpKey key(@Nonnull final String base32Secret) {
+        return this.key(Base32.decode(base32Secret));
+    }
+
+    /**
+     * @param secret Shared secret.
+     * @return The key, to keep for as long as the secret is.
+     */
+    @Nonnull
+    public OtpKey key(@Nonnull final byte[] secret) {
+        return new OtpKey(this.algorithm, secret, this.memoSize);
+    }
+
+    /**
+     * @param key     Key to compute the code with.
+     * @param counter Counter value.
+     * @return The HOTP code of {@code counter}.
+     */
+    public int hotp(@Nonnull final OtpKey key, final long counter) {
+        final int memoized = key.memoized(counter);
+        if (memoized >= 0) {
+            return memoized;
+        }
+        final byte[] scratch = SCRATCH.get();
+        for (int i = 7; i >= 0; i--) {
+            scratch[i] = (byte) (counter >>> (7 - i) * 8);
+        }
+        key.hmac.sign(scratch, 0, 8, scratch, 8);
+        final int offset = 8 + (scratch[8 + key.hmac.macLength() - 1] & 0xf);
+        final int binary = (scratch[offset] & 0x7f) << 24 | (scratch[offset + 1] & 0xff) << 16
+                | (scratch[offset + 2] & 0xff) << 8 | scratch[offset + 3] & 0xff;
+        final int code = binary % this.modulus;
+        key.memoize(counter, code);
+        return code;
+    }
+
+    /**
+     * @param key Key to compute the code with.
+     * @return The current TOTP code.
+     */
+    public int totp(@Nonnull final OtpKey key) {
+        return this.hotp(key, this.currentStep());
+    }
+
+    /**
+     * @param key        Key to compute the code with.
+     * @param epochMillis Time to compute the code of, in milliseconds since the Unix epoch.
+     * @return The TOTP code at {@code epochMillis}.
+     */
+    public int totp(@Nonnull final OtpKey key, final long epochMillis) {
+        return this.hotp(key, Math.floorDiv(epochMillis, this.periodMillis));
+    }
+
+    /**
+     * Verifies a TOTP code against the steps of the drift window, and marks its step as used.
+     *
+     * @param key  Key of the account the code is for.
+     * @param code Code as typed by the user.
+     * @return If the code is valid, and neither its step nor a later one was used before.
+     */
+    public boolean verifyTotp(@Nonnull final OtpKey key, @Nonnull final CharSequence code) {
+        final int parsed = this.parseCode(code);
+        return parsed >= 0 && this.verifyTotp(key, parsed);
+    }
+
+    /**
+     * Verifies a TOTP code against the steps of the drift window, and marks its step as used.
+     *
+     * @param key  Key of the account the code is for.
+     * @param code Code as typed by the user.
+     * @return If the code is valid, and neither its step nor a later one was used before.
+     */
+    public boolean verifyTotp(@Nonnull final OtpKey key, final int code) {
+        final long step = this.currentStep();
+        // Every step of the window is checked so that timing doesn't tell which one matched
+        long matched = -1;
+        for (long s = step - this.window; s <= step + this.window; s++) {
+            if (this.hotp(key, s) == code && matched < 0) {
+                matched = s;
+            }
+        }
+        return matched >= 0 && this.replays.markUsed(key.fingerprint, matched);
+    }
+
+    /**
+     * Verifies a HOTP code against the counter values {@code counter} to {@code counter + lookAhead}. Replays aren't
+     * tracked; callers store the returned counter and pass the next one on the following verification.
+     *
+     * @param key       Key of the account the code is for.
+     * @param counter   Next expected counter value.
+     * @param lookAhead How many counter values past {@code counter} are accepted, to resynchronize.
+     * @param code      Code as typed by the user.
+     * @return The counter value the code matched, or {@code -1} if it's invalid.
+     */
+    public long verifyHotp(@Nonnull final OtpKey key, final long counter, final int lookAhead, final int code) {
+        long matched = -1;
+        for (long c = counter; c <= counter + lookAhead; c++) {
+            if (this.hotp(key, c) == code && matched < 0) {
+                matched = c;
+            }
+        }
+        return matched;
+    }
+
+    private long currentStep() {
+        return Math.floorDiv(this.clock.millis(), this.periodMillis);
+    }
+
+    /**
+     * @return The code, or {@code -1} if it isn't exactly {@link #digits} decimal digits.
+     */
+    private int parseCode(final CharSequence code) {
+        if (code.length() != this.digits) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < this.digits; i++) {
+            final int digit = code.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    public static final class Builder {
+        private OtpAlgorithm algorithm = OtpAlgorithm.SHA1;
+        private int digits = 6;
+        private Duration period = Duration.ofSeconds(30);
+        private int window = 1;
+        private int replayCapacity = 1024;
+        private Clock clock = Clock.systemUTC();
+
+        private Builder() {
+        }
+
+        /**
+         * @param algorithm HMAC algorithm of the codes. Defaults to {@link OtpAlgorithm#SHA1}.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder algorithm(@Nonnull final OtpAlgorithm algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * @param digits Number of digits of the codes, between 6 and 8. Defaults to 6.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder digits(final int digits) {
+            if (digits < 6 || digits > 8) {
+                throw new IllegalArgumentException("Codes must have between 6 and 8 digits");
+            }
+            this.digits = digits;
+            return this;
+        }
+
+        /**
+         * @param period Time each TOTP code is valid for. Defaults to 30 seconds.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder period(@Nonnull final Duration period) {
+            if (period.toMillis() <= 0) {
+                throw new IllegalArgumentException("Period must be positive");
+            }
+            this.period = period;
+            return this;
+        }
+
+        /**
+         * @param window Number of steps before and after the current one whose codes are accepted too, between 0
+         *               and 10. Defaults to 1.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder window(final int window) {
+            if (window < 0 || window > 10) {
+                throw new IllegalArgumentException("Window must be between 0 and 10 steps");
+            }
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * @param replayCapacity Expected number of TOTP verifications per step, sizing the replay cache. Exceeding
+         *                       it is supported, but slower. Defaults to 1024.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder replayCapacity(final int replayCapacity) {
+            if (replayCapacity <= 0) {
+                throw new IllegalArgumentException("Replay capacity must be positive");
+            }
+            this.replayCapacity = replayCapacity;
+            return this;
+        }
+
+        /**
+         * @param clock Clock TOTP steps are read from. Defaults to the system clock.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder clock(@Nonnull final Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        @Nonnull
+        public OtpVerifier build() {
+            return new OtpVerifier(this);
+        }
+    }
+}
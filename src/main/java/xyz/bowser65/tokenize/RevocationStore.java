@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Denylist of individual tokens, consulted by {@link Tokenize} right after the signature check so that a single
+ * stolen token can be revoked without moving {@link IAccount#tokensValidSince()}. Set it with
+ * {@link Tokenize.Builder#revocationStore(RevocationStore)} and revoke with {@link Tokenize#revokeToken(CharSequence)}.
+ * <p>
+ * Tokens are identified by 64 bits of their MAC. Lookups first go through an off-heap Bloom filter, so the common
+ * case of a token that isn't revoked takes a few memory reads and no lock; only filter hits are confirmed against
+ * the exact set. Nothing is allocated on lookups.
+ * <p>
+ * Revoked tokens are forgotten once older than the max age of the store, so a {@link Tokenize} it's attached to must
+ * have a {@link Tokenize.Builder#maxAge(Duration) max age} no longer than it, rejecting them anyway. The store can be
+ * saved to a file and loaded back on restart.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class RevocationStore {
+    private static final int MAGIC = 0x54525331; // TRS1
+    private static final int HEADER_LENGTH = 4 + 8 + 4;
+    private static final int ENTRY_LENGTH = 16;
+    private static final int HASHES = 7;
+
+    /**
+     * Age, in seconds, past which entries are dropped.
+     */
+    private final long maxAge;
+    private final int expectedRevocations;
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Filter read by lookups. Published once complete when rebuilt, and rewritten after each revocation so that
+     * lookups see the bits set by it.
+     */
+    private volatile BloomFilter filter;
+    /**
+     * Filter entries are added to, under the write lock.
+     */
+    private BloomFilter writeFilter;
+    /**
+     * Open-addressed fingerprints, 0 for empty slots, with the generation time of each token alongside.
+     */
+    private long[] fingerprints, times;
+    private int size;
+    /**
+     * Generation time of the oldest entry, {@link Long#MAX_VALUE} when empty.
+     */
+    private long oldest = Long.MAX_VALUE;
+
+    /**
+     * @param expectedRevocations Number of live revocations the store is sized for. It grows past it, at the cost of
+     *                            a rebuild.
+     * @param maxAge              Age past which revoked tokens are forgotten, the max age of the tokens.
+     */
+    public RevocationStore(final int expectedRevocations, @Nonnull final Duration maxAge) {
+        if (expectedRevocations <= 0) {
+            throw new IllegalArgumentException("Expected revocations must be positive");
+        }
+        if (maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException("Max age must be positive");
+        }
+        this.maxAge = maxAge.getSeconds();
+        this.expectedRevocations = expectedRevocations;
+        this.allocate(expectedRevocations);
+        this.filter = this.writeFilter;
+    }
+
+    /**
+     * Loads a store saved with {@link #save(Path)}.
+     *
+     * @param path                File to read.
+     * @param expectedRevocations Number of live revocations the store is sized for.
+     * @return The store, holding the revocations of the file.
+     * @throws IOException If the file can't be read or isn't a saved store.
+     */
+    @Nonnull
+    public static RevocationStore load(@Nonnull final Path path, final int expectedRevocations) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Read rather than mapped, as a mapping would keep the file from being replaced by save on Windows
+            final long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Corrupted revocation store: " + path);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a revocation store: " + path);
+            }
+            final long maxAge = buffer.getLong();
+            final int count = buffer.getInt();
+            if (maxAge <= 0 || count < 0 || buffer.remaining() != (long) count * ENTRY_LENGTH) {
+                throw new IOException("Corrupted revocation store: " + path);
+            }
+
+            final RevocationStore store = new RevocationStore(Math.max(expectedRevocations, count), Duration.ofSeconds(maxAge));
+            for (int i = 0; i < count; i++) {
+                store.insert(buffer.getLong(), buffer.getLong());
+            }
+            store.filter = store.writeFilter;
+            return store;
+        }
+    }
+
+    /**
+     * Writes the revocations to a file, replacing it atomically.
+     *
+     * @param path File to write.
+     * @throws IOException If the file can't be written.
+     */
+    public void save(@Nonnull final Path path) throws IOException {
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        final long stamp = this.lock.readLock();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            buffer.putInt(MAGIC).putLong(this.maxAge).putInt(this.size);
+            for (int i = 0; i < this.fingerprints.length; i++) {
+                if (this.fingerprints[i] == 0) {
+                    continue;
+                }
+                if (buffer.remaining() < ENTRY_LENGTH) {
+                    write(channel, buffer);
+                }
+                buffer.putLong(this.fingerprints[i]).putLong(this.times[i]);
+            }
+            write(channel, buffer);
+            channel.force(false);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return Number of revoked tokens remembered, expired ones included until they're purged.
+     */
+    public int size() {
+        final long stamp = this.lock.readLock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return Age, in seconds, past which revoked tokens are forgotten.
+     */
+    long maxAge() {
+        return this.maxAge;
+    }
+
+    /**
+     * Forgets the revoked tokens older than the max age. Done automatically when tokens are revoked.
+     *
+     * @param now Current token time, see {@link Tokenize#tokenTime()}.
+     */
+    public void purgeExpired(final long now) {
+        final long stamp = this.lock.writeLock();
+        try {
+            if (this.oldest != Long.MAX_VALUE && now - this.oldest > this.maxAge) {
+                this.rebuild(this.size, now);
+                this.filter = this.writeFilter;
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param fingerprint Fingerprint of the token, see {@link TokenReader#fingerprint()}.
+     * @param tokenTime   Generation time of the token.
+     * @param now         Current token time.
+     * @return {@code false} if the token is already older than the max age, and wasn't remembered.
+     */
+    boolean revoke(long fingerprint, final long tokenTime, final long now) {
+        if (now - tokenTime > this.maxAge) {
+            return false;
+        }
+        fingerprint = nonZero(fingerprint);
+        final long stamp = this.lock.writeLock();
+        try {
+            if (this.oldest != Long.MAX_VALUE && now - this.oldest > this.maxAge) {
+                this.rebuild(this.size + 1, now);
+            } else if ((this.size + 1) * 2 > this.fingerprints.length) {
+                this.rebuild(this.size * 2, now);
+            }
+            this.insert(fingerprint, tokenTime);
+            // Publishes the bits set by the insertion, or the rebuilt filter
+            this.filter = this.writeFilter;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+        return true;
+    }
+
+    /**
+     * @param fingerprint Fingerprint of the token, see {@link TokenReader#fingerprint()}.
+     * @return Whether the token was revoked.
+     */
+    boolean isRevoked(long fingerprint) {
+        fingerprint = nonZero(fingerprint);
+        if (!this.filter.mightContain(fingerprint)) {
+            return false;
+        }
+        long stamp = this.lock.tryOptimisticRead();
+        boolean found = this.contains(fingerprint);
+        if (!this.lock.validate(stamp)) {
+            stamp = this.lock.readLock();
+            try {
+                found = this.contains(fingerprint);
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    private boolean contains(final long fingerprint) {
+        final long[] fingerprints = this.fingerprints;
+        final int mask = fingerprints.length - 1;
+        int i = (int) mix(fingerprint) & mask;
+        for (int probes = 0; probes < fingerprints.length; probes++, i = i + 1 & mask) {
+            final long current = fingerprints[i];
+            if (current == fingerprint) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds an entry, the lock being held for writing and the tables having room for it.
+     */
+    private void insert(final long fingerprint, final long tokenTime) {
+        final int mask = this.fingerprints.length - 1;
+        int i = (int) mix(fingerprint) & mask;
+        while (this.fingerprints[i] != 0) {
+            if (this.fingerprints[i] == fingerprint) {
+                return;
+            }
+            i = i + 1 & mask;
+        }
+        this.fingerprints[i] = fingerprint;
+        this.times[i] = tokenTime;
+        this.size++;
+        this.oldest = Math.min(this.oldest, tokenTime);
+        this.writeFilter.add(fingerprint);
+    }
+
+    /**
+     * Reallocates the tables for {@code capacity} entries and reinserts the unexpired ones.
+     */
+    private void rebuild(final int capacity, final long now) {
+        final long[] fingerprints = this.fingerprints, times = this.times;
+        this.allocate(capacity);
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (fingerprints[i] != 0 && now - times[i] <= this.maxAge) {
+                this.insert(fingerprints[i], times[i]);
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        final int entries = Math.max(capacity, this.expectedRevocations);
+        final int slots = Integer.highestOneBit(Math.max(entries, 4) * 2 - 1) << 1;
+        this.fingerprints = new long[slots];
+        this.times = new long[slots];
+        this.size = 0;
+        this.oldest = Long.MAX_VALUE;
+        this.writeFilter = new BloomFilter(entries);
+    }
+
+    private static long nonZero(final long fingerprint) {
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private static long mix(long h) {
+        h = (h ^ h >>> 33) * 0xff51afd7ed558ccdL;
+        h = (h ^ h >>> 33) * 0xc4ceb3fe1a85ec53L;
+        return h ^ h >>> 33;
+    }
+
+    /**
+     * Bloom filter over a direct buffer, sized for about 1% of false positives. Bits are only set under the write
+     * lock of the store.
+     */
+    private static final class BloomFilter {
+        private final ByteBuffer bits;
+        private final long mask;
+
+        private BloomFilter(final int entries) {
+            final long bitCount = Long.highestOneBit(Math.max(entries, 64) * 10L - 1) << 1;
+            this.bits = ByteBuffer.allocateDirect((int) (bitCount >>> 3));
+            this.mask = bitCount - 1;
+        }
+
+        private void add(final long fingerprint) {
+            final long step = mix(fingerprint) | 1;
+            long hash = fingerprint;
+            for (int i = 0; i < HASHES; i++, hash += step) {
+                final int index = (int) ((hash & this.mask) >>> 6) << 3;
+                this.bits.putLong(index, this.bits.getLong(index) | 1L << hash);
+            }
+        }
+
+        private boolean mightContain(final long fingerprint) {
+            final long step = mix(fingerprint) | 1;
+            long hash = fingerprint;
+            for (int i = 0; i < HASHES; i++, hash += step) {
+                if ((this.bits.getLong((int) ((hash & this.mask) >>> 6) << 3) & 1L << hash) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -31,8 +31,8 @@ import lombok.Getter;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
 
 /**
  * Represents a Tokenize token
@@ -41,6 +41,13 @@ import java.util.Base64;
  * @since 1.0.0
  */
 public class Token {
+    /**
+     * Value of {@link #getExpiresAt()} for tokens that don't expire.
+     *
+     * @since 1.1.0
+     */
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
     private final Tokenize tokenize;
     @Getter
     private final IAccount account;
@@ -48,13 +55,23 @@ public class Token {
     private String prefix;
     @Getter
     private long genTime;
+    /**
+     * Tokenize timestamp from which the token is no longer valid, or {@link #NO_EXPIRY}.
+     */
+    @Getter
+    private long expiresAt;
+    /**
+     * Memoized signed form, cleared whenever the token changes.
+     */
+    private byte[] signed;
+    private String signedString;
 
     Token(@Nonnull final Tokenize tokenize, @Nonnull final IAccount account) {
-        this(tokenize, account, null, Tokenize.currentTokenTime());
+        this(tokenize, account, null, tokenize.tokenTime());
     }
 
     Token(@Nonnull final Tokenize tokenize, @Nonnull final IAccount account, @Nullable final String prefix) {
-        this(tokenize, account, prefix, Tokenize.currentTokenTime());
+        this(tokenize, account, prefix, tokenize.tokenTime());
     }
 
     Token(@Nonnull final Tokenize tokenize, @Nonnull final IAccount account, final long genTime) {
@@ -62,10 +79,27 @@ public class Token {
     }
 
     Token(@Nonnull final Tokenize tokenize, @Nonnull final IAccount account, @Nullable final String prefix, final long genTime) {
+        this(tokenize, account, prefix, genTime, NO_EXPIRY);
+    }
+
+    Token(@Nonnull final Tokenize tokenize, @Nonnull final IAccount account, @Nullable final String prefix, final long genTime, final long expiresAt) {
         this.tokenize = tokenize;
         this.account = account;
         this.prefix = prefix;
         this.genTime = genTime;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return A token equal to this one, that can be modified without affecting it.
+     */
+    @Nonnull
+    Token copy() {
+        final Token copy = new Token(this.tokenize, this.account, this.prefix, this.genTime, this.expiresAt);
+        // Never written to once memoized, only dropped
+        copy.signed = this.signed;
+        copy.signedString = this.signedString;
+        return copy;
     }
 
     /**
@@ -73,32 +107,80 @@ public class Token {
      */
     @Override
     public String toString() {
-        final StringBuilder token = new StringBuilder();
-        if (this.prefix != null) {
-            token.append(this.prefix).append('.');
+        String signed = this.signedString;
+        if (signed == null) {
+            final byte[] raw = this.signed();
+            this.signedString = signed = new String(raw, 0, raw.length, StandardCharsets.UTF_8);
         }
+        return signed;
+    }
 
-        final byte[] rawId = Base64.getEncoder().encode(this.account.getTokenId().getBytes(StandardCharsets.UTF_8)),
-                rawTime = Base64.getEncoder().encode(String.valueOf(this.genTime).getBytes(StandardCharsets.UTF_8));
+    /**
+     * Appends the signed token to a builder.
+     *
+     * @param builder The builder.
+     * @return The builder.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public StringBuilder writeTo(@Nonnull final StringBuilder builder) {
+        return builder.append(this.toString());
+    }
 
-        token.append(new String(rawId, 0, rawId.length, StandardCharsets.UTF_8));
-        token.append('.');
-        token.append(new String(rawTime, 0, rawTime.length, StandardCharsets.UTF_8));
+    /**
+     * Writes the UTF-8 bytes of the signed token to an array.
+     *
+     * @param dst    The array.
+     * @param offset Where to start writing.
+     * @return Number of bytes written, which is {@link #encodedLength()}.
+     * @throws IndexOutOfBoundsException If the token doesn't fit in the array.
+     * @since 1.1.0
+     */
+    public int writeTo(@Nonnull final byte[] dst, final int offset) {
+        final byte[] raw = this.signed();
+        System.arraycopy(raw, 0, dst, offset, raw.length);
+        return raw.length;
+    }
+
+    /**
+     * Writes the UTF-8 bytes of the signed token to a buffer, advancing its position.
+     *
+     * @param dst The buffer.
+     * @return Number of bytes written, which is {@link #encodedLength()}.
+     * @throws java.nio.BufferOverflowException If the token doesn't fit in the buffer.
+     * @since 1.1.0
+     */
+    public int writeTo(@Nonnull final ByteBuffer dst) {
+        final byte[] raw = this.signed();
+        dst.put(raw);
+        return raw.length;
+    }
 
-        final String toSign = token.toString();
-        token.append('.').append(tokenize.computeHmac(toSign));
-        return token.toString();
+    /**
+     * @return Length of the UTF-8 encoded signed token, in bytes.
+     * @since 1.1.0
+     */
+    public int encodedLength() {
+        return this.signed().length;
+    }
+
+    private byte[] signed() {
+        byte[] raw = this.signed;
+        if (raw == null) {
+            this.signed = raw = TokenWriter.write(this.tokenize, this.prefix, this.account, this.genTime, this.expiresAt);
+        }
+        return raw;
     }
 
     /**
-     * Resets the generation time for the token
+     * Resets the generation time for the token. Its expiry time, if any, moves along with it.
      */
     public void regenerate() {
-        this.genTime = Tokenize.currentTokenTime();
+        this.restart();
     }
 
     /**
-     * Sets the prefix of the token, and resets the generation time
+     * Sets the prefix of the token, and resets the generation time. Its expiry time, if any, moves along with it.
      *
      * @param prefix The new prefix. Cannot contain dots
      */
@@ -107,13 +189,39 @@ public class Token {
             throw new IllegalArgumentException("Prefix cannot contain dots.");
         }
         this.prefix = prefix;
-        this.genTime = Tokenize.currentTokenTime();
+        this.restart();
+    }
+
+    private void restart() {
+        final long now = this.tokenize.tokenTime();
+        if (this.expiresAt != NO_EXPIRY) {
+            this.expiresAt = now + (this.expiresAt - this.genTime);
+        }
+        this.genTime = now;
+        this.signed = null;
+        this.signedString = null;
     }
 
     /**
      * @return The token age in seconds
      */
     public long getAge() {
-        return genTime - Tokenize.TOKENIZE_EPOCH / 1000;
+        return this.tokenize.tokenTime() - this.genTime;
+    }
+
+    /**
+     * @return Whether the token carries an expiry time.
+     * @since 1.1.0
+     */
+    public boolean hasExpiry() {
+        return this.expiresAt != NO_EXPIRY;
+    }
+
+    /**
+     * @return Whether the token is past its expiry time, or older than the max age of its {@link Tokenize} instance.
+     * @since 1.1.0
+     */
+    public boolean isExpired() {
+        return this.tokenize.isExpired(this.genTime, this.expiresAt, this.tokenize.tokenTime());
     }
 }
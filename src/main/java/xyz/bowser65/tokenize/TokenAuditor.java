@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Re-validates large dumps of tokens, e.g. pulled from access logs during an incident or before retiring a key.
+ * <p>
+ * Files hold one token per line. They're memory-mapped and cut into chunks at line boundaries, and chunks are
+ * checked in parallel on a {@link ForkJoinPool}, straight from the mapped bytes. The accounts of the tokens that pass
+ * the signature, expiry and revocation store checks are resolved in batches with a {@link BatchAccountFetcher}. Memory
+ * use doesn't depend on the size of the files, only on the number of distinct accounts in the report.
+ * <p>
+ * Empty lines are skipped, and a trailing carriage return is ignored. Tokens are checked against the time the audit
+ * started.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class TokenAuditor {
+    /**
+     * Default number of bytes of a file checked by a single task.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+    /**
+     * Default number of tokens whose accounts are resolved with a single call to the fetcher.
+     */
+    public static final int DEFAULT_FETCH_BATCH_SIZE = 1024;
+    private static final int MAX_CHUNK_SIZE = 1 << 30;
+
+    private final Tokenize tokenize;
+    private final BatchAccountFetcher accountFetcher;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int fetchBatchSize;
+
+    /**
+     * Creates an auditor running on the common pool with the default chunk and batch sizes.
+     *
+     * @param tokenize       Tokenize instance holding the secrets the tokens were signed with.
+     * @param accountFetcher Fetcher used to resolve the accounts of the tokens.
+     */
+    public TokenAuditor(@Nonnull final Tokenize tokenize, @Nonnull final BatchAccountFetcher accountFetcher) {
+        this(tokenize, accountFetcher, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, DEFAULT_FETCH_BATCH_SIZE);
+    }
+
+    /**
+     * @param tokenize       Tokenize instance holding the secrets the tokens were signed with.
+     * @param accountFetcher Fetcher used to resolve the accounts of the tokens. It's called from the pool threads.
+     * @param pool           Pool the chunks are checked on.
+     * @param chunkSize      Number of bytes of a file checked by a single task, up to 1 GiB.
+     * @param fetchBatchSize Number of tokens whose accounts are resolved with a single call to the fetcher.
+     */
+    public TokenAuditor(@Nonnull final Tokenize tokenize, @Nonnull final BatchAccountFetcher accountFetcher,
+                        @Nonnull final ForkJoinPool pool, final int chunkSize, final int fetchBatchSize) {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+        if (fetchBatchSize <= 0) {
+            throw new IllegalArgumentException("Fetch batch size must be positive");
+        }
+        this.tokenize = tokenize;
+        this.accountFetcher = accountFetcher;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.fetchBatchSize = fetchBatchSize;
+    }
+
+    /**
+     * @param files Files holding one token per line.
+     * @return Summary of the tokens of every file.
+     * @throws IOException If a file can't be read.
+     */
+    @Nonnull
+    public AuditReport audit(@Nonnull final Path... files) throws IOException {
+        final List<Path> list = new ArrayList<>(files.length);
+        Collections.addAll(list, files);
+        return this.audit(list);
+    }
+
+    /**
+     * @param files Files holding one token per line.
+     * @return Summary of the tokens of every file.
+     * @throws IOException If a file can't be read.
+     */
+    @Nonnull
+    public AuditReport audit(@Nonnull final Collection<Path> files) throws IOException {
+        final Audit audit = new Audit(this.tokenize.tokenTime());
+        final List<FileChannel> channels = new ArrayList<>(files.size());
+        try {
+            final List<ChunkTask> tasks = new ArrayList<>(files.size());
+            for (final Path file : files) {
+                final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                channels.add(channel);
+                final long size = channel.size();
+                final long chunks = (size + this.chunkSize - 1) / this.chunkSize;
+                if (chunks > 0) {
+                    tasks.add(new ChunkTask(audit, channel, size, 0, chunks));
+                }
+            }
+            this.pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (final FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+        return audit.report();
+    }
+
+    /**
+     * Checks the lines starting within a chunk. The last one may end in the next chunk, which skips it.
+     */
+    private void auditChunk(final Audit audit, final FileChannel channel, final long size, final long chunk) throws IOException {
+        final long start = chunk * this.chunkSize;
+        final long end = Math.min(size, start + this.chunkSize);
+        // The byte before the chunk tells whether it starts on a new line, and lines longer than a token are malformed
+        final long mapStart = start == 0 ? 0 : start - 1;
+        final long mapEnd = Math.min(size, end + TokenReader.MAX_TOKEN_LENGTH + 2);
+        final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        final int limit = map.limit();
+        final int owned = (int) (end - mapStart);
+
+        int i = 0;
+        if (start != 0) {
+            while (i < limit && map.get(i) != '\n') {
+                i++;
+            }
+            i++;
+        }
+
+        final Tally tally = new Tally(audit);
+        final byte[] line = new byte[TokenReader.MAX_TOKEN_LENGTH + 1];
+        while (i < owned) {
+            int length = 0;
+            while (i < limit) {
+                final byte b = map.get(i++);
+                if (b == '\n') {
+                    break;
+                }
+                if (length < line.length) {
+                    line[length] = b;
+                }
+                length++;
+            }
+            if (length > 0 && length <= line.length && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length > 0) {
+                tally.check(line, Math.min(length, line.length));
+            }
+        }
+        tally.flush();
+    }
+
+    /**
+     * State shared by the tasks of an audit.
+     */
+    private static final class Audit {
+        private final long now;
+        private final LongAdder[] counts = new LongAdder[ValidationResult.Status.values().length];
+        private final ConcurrentHashMap<String, long[]> accounts = new ConcurrentHashMap<>();
+
+        private Audit(final long now) {
+            this.now = now;
+            for (int i = 0; i < this.counts.length; i++) {
+                this.counts[i] = new LongAdder();
+            }
+        }
+
+        private AuditReport report() {
+            final long[] counts = new long[this.counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = this.counts[i].sum();
+            }
+            return new AuditReport(counts, this.accounts);
+        }
+    }
+
+    /**
+     * Counts of a single task, holding the verified tokens until their accounts are fetched.
+     */
+    private final class Tally {
+        private final Audit audit;
+        private final long[] counts = new long[ValidationResult.Status.values().length];
+        private final String[] ids = new String[TokenAuditor.this.fetchBatchSize];
+        private final long[] times = new long[TokenAuditor.this.fetchBatchSize];
+        private int pending;
+
+        private Tally(final Audit audit) {
+            this.audit = audit;
+        }
+
+        private void check(final byte[] line, final int length) {
+            final TokenReader reader = TokenReader.get().wrap(line, 0, length);
+            final ValidationResult rejection = TokenAuditor.this.tokenize.precheck(reader, this.audit.now);
+            if (rejection != null) {
+                this.counts[rejection.getStatus().ordinal()]++;
+                return;
+            }
+            try {
+                this.ids[this.pending] = reader.accountId();
+            } catch (IllegalArgumentException e) {
+                this.counts[ValidationResult.Status.MALFORMED.ordinal()]++;
+                return;
+            }
+            this.times[this.pending] = reader.time();
+            if (++this.pending == this.ids.length) {
+                this.resolve();
+            }
+        }
+
+        private void resolve() {
+            if (this.pending == 0) {
+                return;
+            }
+            final Set<String> unique = new HashSet<>();
+            for (int i = 0; i < this.pending; i++) {
+                unique.add(this.ids[i]);
+            }
+            final Map<String, IAccount> fetched = TokenAuditor.this.accountFetcher.fetchAccounts(unique);
+            final Map<String, long[]> perAccount = new HashMap<>();
+            for (int i = 0; i < this.pending; i++) {
+                final String id = this.ids[i];
+                this.ids[i] = null;
+                final IAccount account = fetched.get(id);
+                if (account == null) {
+                    this.counts[ValidationResult.Status.UNKNOWN_ACCOUNT.ordinal()]++;
+                    continue;
+                }
+                final boolean valid = this.times[i] > account.tokensValidSince();
+                this.counts[(valid ? ValidationResult.Status.VALID : ValidationResult.Status.REVOKED).ordinal()]++;
+                perAccount.computeIfAbsent(id, key -> new long[2])[valid ? 0 : 1]++;
+            }
+            this.pending = 0;
+            perAccount.forEach((id, counts) -> this.audit.accounts.merge(id, counts, (a, b) -> {
+                a[0] += b[0];
+                a[1] += b[1];
+                return a;
+            }));
+        }
+
+        private void flush() {
+            this.resolve();
+            for (int i = 0; i < this.counts.length; i++) {
+                if (this.counts[i] != 0) {
+                    this.audit.counts[i].add(this.counts[i]);
+                }
+            }
+        }
+    }
+
+    private final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Audit audit;
+        private final FileChannel channel;
+        private final long size, from, to;
+
+        private ChunkTask(final Audit audit, final FileChannel channel, final long size, final long from, final long to) {
+            this.audit = audit;
+            this.channel = channel;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                final long middle = (this.from + this.to) >>> 1;
+                ForkJoinTask.invokeAll(new ChunkTask(this.audit, this.channel, this.size, this.from, middle),
+                        new ChunkTask(this.audit, this.channel, this.size, middle, this.to));
+                return;
+            }
+            try {
+                TokenAuditor.this.auditChunk(this.audit, this.channel, this.size, this.from);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
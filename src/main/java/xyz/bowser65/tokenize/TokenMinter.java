@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates tokens in bulk, e.g. when migrating accounts or provisioning service accounts.
+ * <p>
+ * Tokens are signed in parallel on a {@link ForkJoinPool}, each worker reusing its own keyed {@link javax.crypto.Mac}
+ * and encoding buffers, without creating {@link Token} objects. All tokens of a call share the same generation time.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class TokenMinter {
+    /**
+     * Default number of tokens generated by a single task when writing to a {@link Writer} or a channel.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private final Tokenize tokenize;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+
+    /**
+     * Creates a minter running on the common pool, with the default batch size.
+     *
+     * @param tokenize Tokenize instance holding the secret.
+     */
+    public TokenMinter(@Nonnull final Tokenize tokenize) {
+        this(tokenize, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param tokenize  Tokenize instance holding the secret.
+     * @param pool      Pool the tokens are signed on.
+     * @param batchSize Number of tokens generated by a single task when writing to a {@link Writer} or a channel.
+     */
+    public TokenMinter(@Nonnull final Tokenize tokenize, @Nonnull final ForkJoinPool pool, final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.tokenize = tokenize;
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param accounts The accounts.
+     * @param prefix   The token prefix, may be {@code null}.
+     * @return The signed token of each account, in iteration order of {@code accounts}.
+     */
+    @Nonnull
+    public List<String> mint(@Nonnull final Collection<? extends IAccount> accounts, @Nullable final String prefix) {
+        final long now = this.tokenize.tokenTime();
+        return this.pool.submit(() -> accounts.parallelStream()
+                .map(account -> this.mint(account, prefix, now))
+                .collect(Collectors.toList())).join();
+    }
+
+    /**
+     * Lazily generates the tokens of a stream of accounts. Tokens are generated in parallel if the stream is
+     * parallel, on the pool the stream runs on.
+     *
+     * @param accounts The accounts.
+     * @param prefix   The token prefix, may be {@code null}.
+     * @return The signed token of each account.
+     */
+    @Nonnull
+    public Stream<String> mint(@Nonnull final Stream<? extends IAccount> accounts, @Nullable final String prefix) {
+        final long now = this.tokenize.tokenTime();
+        return accounts.map(account -> this.mint(account, prefix, now));
+    }
+
+    /**
+     * Writes the token of each account to {@code out}, one per line, in encounter order of {@code accounts}. The
+     * stream is consumed on the calling thread, and batches of tokens are generated on the pool while earlier ones are
+     * written. The writer isn't flushed nor closed.
+     *
+     * @param accounts The accounts.
+     * @param prefix   The token prefix, may be {@code null}.
+     * @param out      Destination of the tokens.
+     * @return Number of tokens written.
+     * @throws IOException If writing fails.
+     */
+    public long mintTo(@Nonnull final Stream<? extends IAccount> accounts, @Nullable final String prefix, @Nonnull final Writer out) throws IOException {
+        final boolean ascii = prefix == null || prefix.chars().allMatch(c -> c < 0x80);
+        return this.mintTo(accounts, prefix, ascii, batch -> {
+            if (ascii) {
+                out.write(batch.chars, 0, batch.length);
+            } else {
+                out.write(new String(batch.bytes, 0, batch.length, StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    /**
+     * Writes the UTF-8 token of each account to {@code out}, one per line, in encounter order of {@code accounts}.
+     * The stream is consumed on the calling thread, and batches of tokens are generated on the pool while earlier ones
+     * are written. The channel isn't closed.
+     *
+     * @param accounts The accounts.
+     * @param prefix   The token prefix, may be {@code null}.
+     * @param out      Destination of the tokens.
+     * @return Number of tokens written.
+     * @throws IOException If writing fails.
+     */
+    public long mintTo(@Nonnull final Stream<? extends IAccount> accounts, @Nullable final String prefix, @Nonnull final WritableByteChannel out) throws IOException {
+        return this.mintTo(accounts, prefix, false, batch -> {
+            final ByteBuffer buffer = ByteBuffer.wrap(batch.bytes, 0, batch.length);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        });
+    }
+
+    @Nonnull
+    private String mint(@Nonnull final IAccount account, @Nullable final String prefix, final long now) {
+        final TokenWriter writer = TokenWriter.get();
+        final int length = writer.encode(this.tokenize, prefix, account, now, Token.NO_EXPIRY);
+        return new String(writer.buffer(), 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates batches on the pool and hands them to {@code sink} in order. At most two batches per worker are in
+     * flight, so that memory use doesn't depend on the number of accounts, and their buffers are reused.
+     */
+    private long mintTo(final Stream<? extends IAccount> accounts, @Nullable final String prefix, final boolean chars, final BatchSink sink) throws IOException {
+        final long now = this.tokenize.tokenTime();
+        final Iterator<? extends IAccount> iterator = accounts.iterator();
+        final int maxRunning = Math.max(2, this.pool.getParallelism() * 2);
+        final ArrayDeque<ForkJoinTask<Batch>> running = new ArrayDeque<>(maxRunning);
+        final ArrayDeque<Batch> free = new ArrayDeque<>(maxRunning);
+        long written = 0;
+        try {
+            while (iterator.hasNext()) {
+                final Batch batch = free.isEmpty() ? new Batch(this.batchSize) : free.poll();
+                batch.fill(iterator);
+                running.add(this.pool.submit(() -> batch.mint(this.tokenize, prefix, now, chars)));
+                if (running.size() == maxRunning) {
+                    written += this.write(running.poll().join(), sink, free);
+                }
+            }
+            while (!running.isEmpty()) {
+                written += this.write(running.poll().join(), sink, free);
+            }
+        } finally {
+            for (final ForkJoinTask<Batch> task : running) {
+                task.cancel(false);
+            }
+        }
+        return written;
+    }
+
+    private int write(final Batch batch, final BatchSink sink, final ArrayDeque<Batch> free) throws IOException {
+        sink.accept(batch);
+        free.add(batch);
+        return batch.count;
+    }
+
+    @FunctionalInterface
+    private interface BatchSink {
+        void accept(Batch batch) throws IOException;
+    }
+
+    /**
+     * Accounts of a batch and the buffer their tokens are written to, reused from one batch to the next.
+     */
+    private static final class Batch {
+        private final IAccount[] accounts;
+        private int count;
+        private byte[] bytes = new byte[0];
+        private char[] chars = new char[0];
+        private int length;
+
+        private Batch(final int size) {
+            this.accounts = new IAccount[size];
+        }
+
+        private void fill(final Iterator<? extends IAccount> iterator) {
+            this.count = 0;
+            while (this.count < this.accounts.length && iterator.hasNext()) {
+                this.accounts[this.count++] = iterator.next();
+            }
+        }
+
+        private Batch mint(final Tokenize tokenize, @Nullable final String prefix, final long now, final boolean chars) {
+            final TokenWriter writer = TokenWriter.get();
+            int n = 0;
+            for (int i = 0; i < this.count; i++) {
+                final int length = writer.encode(tokenize, prefix, this.accounts[i], now, Token.NO_EXPIRY);
+                this.accounts[i] = null;
+                if (n + length + 1 > this.bytes.length) {
+                    this.bytes = Arrays.copyOf(this.bytes, Math.max(n + length + 1, this.bytes.length * 2));
+                }
+                System.arraycopy(writer.buffer(), 0, this.bytes, n, length);
+                n += length;
+                this.bytes[n++] = '\n';
+            }
+            this.length = n;
+
+            if (chars) {
+                // Tokens are ASCII when the prefix is
+                if (this.chars.length < n) {
+                    this.chars = new char[this.bytes.length];
+                }
+                for (int i = 0; i < n; i++) {
+                    this.chars[i] = (char) this.bytes[i];
+                }
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Index-based reader for raw tokens. Splits the token by scanning for dots, verifies its signature on the raw
+ * bytes and decodes its fields without building intermediate strings. Compact tokens, which have no dots, are
+ * decoded and parsed in one pass.
+ * <p>
+ * Instances are thread-confined scratch space; get one with {@link #get()} and use it before calling anything
+ * that may validate another token on the same thread.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+final class TokenReader {
+    /**
+     * Length of an HmacSHA256 signature.
+     */
+    static final int MAC_LENGTH = 32;
+    /**
+     * Length of the unpadded Base64 form of the signature.
+     */
+    static final int SIGNATURE_LENGTH = 43;
+    /**
+     * Separates the key ID from the signature in keyed tokens.
+     */
+    static final byte KEY_ID_SEPARATOR = '~';
+    /**
+     * Compact token flag: a prefix follows the account ID.
+     */
+    static final int FLAG_PREFIX = 1;
+    /**
+     * Compact token flag: an expiry time follows the account ID and prefix.
+     */
+    static final int FLAG_EXPIRY = 1 << 1;
+    /**
+     * Compact token flag: the ID of the signing key follows the flags.
+     */
+    static final int FLAG_KEYED = 1 << 2;
+    /**
+     * Compact token flag: the account ID is a zigzag varint {@code long} rather than UTF-8 bytes, see
+     * {@link LongIdAccount}.
+     */
+    static final int FLAG_LONG_ID = 1 << 3;
+    /**
+     * Shortest accepted truncated MAC of compact tokens.
+     */
+    static final int MIN_COMPACT_MAC_LENGTH = 8;
+    /**
+     * Longest accepted token. Longer input is rejected before being copied or scanned.
+     */
+    static final int MAX_TOKEN_LENGTH = 4096;
+    /**
+     * Tokens longer than this are copied into a throwaway array instead of growing the thread's buffer.
+     */
+    private static final int MAX_RETAINED_LENGTH = 8192;
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Non-zero for the characters of the standard Base64 alphabet.
+     */
+    private static final byte[] BASE64 = new byte[128];
+
+    static {
+        for (final char c : "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray()) {
+            BASE64[c] = 1;
+        }
+    }
+
+    private static final ThreadLocal<TokenReader> LOCAL = ThreadLocal.withInitial(TokenReader::new);
+
+    private byte[] buffer = new byte[256];
+    private byte[] decoded = new byte[64];
+    private final byte[] mac = new byte[MAC_LENGTH];
+    private final byte[] signature = new byte[SIGNATURE_LENGTH];
+
+    private byte[] payload = new byte[128];
+
+    private byte[] src;
+    private int start, prefixStart, prefixEnd, idStart, idEnd, timeStart, timeEnd, sigStart, end;
+    /**
+     * Whether the token is a compact one, in which case the offsets point into {@link #payload}.
+     */
+    private boolean compact;
+    private int payloadLength, keyStart, keyEnd, macStart, position;
+    private long time, expiry, longId;
+    private boolean hasExpiry, hasLongId;
+
+    private TokenReader() {
+    }
+
+    @Nonnull
+    static TokenReader get() {
+        return LOCAL.get();
+    }
+
+    @Nonnull
+    TokenReader wrap(@Nonnull final byte[] token, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset > token.length - length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", array " + token.length);
+        }
+        this.src = token;
+        this.start = offset;
+        this.end = offset + length;
+        return this;
+    }
+
+    @Nonnull
+    TokenReader wrap(@Nonnull final ByteBuffer token) {
+        final int length = token.remaining();
+        if (length > MAX_TOKEN_LENGTH) {
+            return this.wrap(EMPTY, 0, 0);
+        }
+        if (token.hasArray()) {
+            return this.wrap(token.array(), token.arrayOffset() + token.position(), length);
+        }
+
+        final byte[] dst = this.buffer(length);
+        final int position = token.position();
+        for (int i = 0; i < length; i++) {
+            dst[i] = token.get(position + i);
+        }
+        return this.wrap(dst, 0, length);
+    }
+
+    @Nonnull
+    TokenReader wrap(@Nonnull final CharSequence token) {
+        final int length = token.length();
+        if (length > MAX_TOKEN_LENGTH) {
+            return this.wrap(EMPTY, 0, 0);
+        }
+        byte[] dst = this.buffer(length);
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = token.charAt(i);
+            if (c < 0x80) {
+                dst[n++] = (byte) c;
+                continue;
+            }
+
+            // Rare: tokens are ASCII unless the prefix isn't. Encode the rest as UTF-8 like String#getBytes.
+            if (n + 4 * (length - i) > dst.length) {
+                final byte[] larger = this.buffer(n + 4 * (length - i));
+                System.arraycopy(dst, 0, larger, 0, n);
+                dst = larger;
+            }
+            if (c < 0x800) {
+                dst[n++] = (byte) (0xc0 | c >> 6);
+                dst[n++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(token.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, token.charAt(++i));
+                dst[n++] = (byte) (0xf0 | cp >> 18);
+                dst[n++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                dst[n++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                dst[n++] = (byte) (0x80 | cp & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                dst[n++] = '?';
+            } else {
+                dst[n++] = (byte) (0xe0 | c >> 12);
+                dst[n++] = (byte) (0x80 | c >> 6 & 0x3f);
+                dst[n++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return this.wrap(dst, 0, n);
+    }
+
+    /**
+     * Locates the parts of the token and decodes its time, checking its structure with bounds and alphabet checks
+     * only, so that junk is rejected before any MAC is computed.
+     *
+     * @return {@code false} if the token is too long, doesn't have 3 or 4 well-formed parts, or isn't a well-formed
+     * compact token.
+     */
+    boolean split() {
+        if (this.end - this.start > MAX_TOKEN_LENGTH) {
+            return false;
+        }
+        int dots = 0;
+        int d0 = -1, d1 = -1, d2 = -1;
+        for (int i = this.start; i < this.end; i++) {
+            if (this.src[i] == '.') {
+                switch (dots++) {
+                    case 0:
+                        d0 = i;
+                        break;
+                    case 1:
+                        d1 = i;
+                        break;
+                    case 2:
+                        d2 = i;
+                        break;
+                    default:
+                        return false;
+                }
+            }
+        }
+
+        this.compact = false;
+        this.hasExpiry = false;
+        this.hasLongId = false;
+        if (dots == 0) {
+            return this.splitCompact();
+        } else if (dots == 2) {
+            this.prefixEnd = -1;
+            this.idStart = this.start;
+            this.idEnd = d0;
+            this.timeEnd = d1;
+        } else if (dots == 3) {
+            this.prefixStart = this.start;
+            this.prefixEnd = d0;
+            this.idStart = d0 + 1;
+            this.idEnd = d1;
+            this.timeEnd = d2;
+        } else {
+            return false;
+        }
+        this.timeStart = this.idEnd + 1;
+        this.sigStart = this.timeEnd + 1;
+        return this.checkSignaturePart()
+                && this.idEnd > this.idStart && isBase64(this.src, this.idStart, this.idEnd, true)
+                && this.decodeTime();
+    }
+
+    /**
+     * Checks the signature part is an unpadded Base64 MAC, optionally preceded by a key ID and its separator.
+     */
+    private boolean checkSignaturePart() {
+        int macStart = this.sigStart;
+        final int keyLength = this.end - this.sigStart - SIGNATURE_LENGTH - 1;
+        if (keyLength > 0 && keyLength <= Keyring.MAX_KEY_ID_LENGTH && this.src[this.sigStart + keyLength] == KEY_ID_SEPARATOR) {
+            macStart += keyLength + 1;
+        }
+        return this.end - macStart == SIGNATURE_LENGTH && isBase64(this.src, macStart, this.end, false);
+    }
+
+    /**
+     * @return Whether {@code src[from..to)} only holds characters of the standard Base64 alphabet, and padding if
+     * {@code pad}.
+     */
+    private static boolean isBase64(final byte[] src, final int from, final int to, final boolean pad) {
+        int invalid = 0;
+        for (int i = from; i < to; i++) {
+            final byte b = src[i];
+            invalid |= b < 0 || BASE64[b] == 0 && !(pad && b == '=') ? 1 : 0;
+        }
+        return invalid == 0;
+    }
+
+    /**
+     * Decodes the Base64-encoded decimal time of a text token into {@link #time}.
+     *
+     * @return {@code false} if the time part isn't a Base64-encoded decimal number.
+     */
+    private boolean decodeTime() {
+        final int length = this.timeEnd > this.timeStart ? this.decode(this.timeStart, this.timeEnd) : -1;
+        if (length <= 0) {
+            return false;
+        }
+
+        final byte[] digits = this.decoded;
+        final boolean negative = digits[0] == '-';
+        int i = negative ? 1 : 0;
+        if (i == length) {
+            return false;
+        }
+
+        long time = 0;
+        for (; i < length; i++) {
+            final int digit = digits[i] - '0';
+            if (digit < 0 || digit > 9 || time > (Long.MAX_VALUE - digit) / 10) {
+                return false;
+            }
+            time = time * 10 + digit;
+        }
+        this.time = negative ? -time : time;
+        return true;
+    }
+
+    /**
+     * Decodes a compact token and locates its fields. Layout, before URL-safe Base64 encoding: version, flags,
+     * optional length-prefixed key ID, zigzag varint time, varint-length-prefixed account ID (or zigzag varint
+     * account ID if {@link #FLAG_LONG_ID} is set), optional
+     * varint-length-prefixed prefix, optional zigzag varint expiry time, truncated MAC.
+     */
+    private boolean splitCompact() {
+        final int max = Base64Codec.maxDecodedLength(this.end - this.start);
+        if (max > this.payload.length) {
+            if (max > MAX_RETAINED_LENGTH) {
+                return false;
+            }
+            this.payload = new byte[Math.max(max, this.payload.length * 2)];
+        }
+        final int length = Base64Codec.decodeUrlSafe(this.src, this.start, this.end - this.start, this.payload, 0);
+        if (length < 2 || this.payload[0] != Tokenize.COMPACT_VERSION) {
+            return false;
+        }
+
+        final int flags = this.payload[1];
+        if ((flags & ~(FLAG_PREFIX | FLAG_EXPIRY | FLAG_KEYED | FLAG_LONG_ID)) != 0) {
+            return false;
+        }
+        this.compact = true;
+        this.payloadLength = length;
+        this.position = 2;
+
+        this.keyStart = this.keyEnd = -1;
+        if ((flags & FLAG_KEYED) != 0) {
+            final int keyLength = length > 2 ? this.payload[2] : 0;
+            if (keyLength <= 0 || keyLength > Keyring.MAX_KEY_ID_LENGTH || 3 + keyLength > length) {
+                return false;
+            }
+            this.keyStart = 3;
+            this.keyEnd = this.position = 3 + keyLength;
+        }
+
+        this.time = this.readZigZag();
+        if ((flags & FLAG_LONG_ID) != 0) {
+            this.longId = this.readZigZag();
+            this.hasLongId = true;
+        } else {
+            this.idStart = this.readLength();
+            this.idEnd = this.position;
+        }
+        this.prefixEnd = -1;
+        if ((flags & FLAG_PREFIX) != 0) {
+            this.prefixStart = this.readLength();
+            this.prefixEnd = this.position;
+        }
+        if ((flags & FLAG_EXPIRY) != 0) {
+            this.expiry = this.readZigZag();
+            this.hasExpiry = true;
+        }
+        this.macStart = this.position;
+        return this.position >= 0 && length - this.macStart >= MIN_COMPACT_MAC_LENGTH && length - this.macStart <= MAC_LENGTH;
+    }
+
+    /**
+     * Reads a varint length and skips that many bytes.
+     *
+     * @return Offset of the skipped bytes. {@link #position} is negative if the payload is malformed.
+     */
+    private int readLength() {
+        final long length = this.readVarint();
+        final int from = this.position;
+        if (from >= 0 && length <= this.payloadLength - from) {
+            this.position = from + (int) length;
+        } else {
+            this.position = -1;
+        }
+        return from;
+    }
+
+    private long readZigZag() {
+        final long value = this.readVarint();
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /**
+     * @return The varint at {@link #position}. {@link #position} is negative if the payload is malformed.
+     */
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; this.position >= 0 && shift < 64; shift += 7) {
+            if (this.position >= this.payloadLength) {
+                break;
+            }
+            final byte b = this.payload[this.position++];
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        this.position = -1;
+        return 0;
+    }
+
+    /**
+     * Checks the signature part of the token against the HMAC of its signed part, in constant time. Keyed tokens are
+     * checked with the key they name, others with the unkeyed secret.
+     *
+     * @param tokenize Tokenize instance holding the secrets.
+     * @return Whether the signature is valid.
+     */
+    boolean verify(@Nonnull final Tokenize tokenize) {
+        if (this.compact) {
+            return this.verifyCompact(tokenize);
+        }
+
+        final HmacEngine hmac;
+        int macStart = this.sigStart;
+        final int separator = this.indexOf(KEY_ID_SEPARATOR, this.sigStart, Math.min(this.end, this.sigStart + Keyring.MAX_KEY_ID_LENGTH + 1));
+        if (separator < 0) {
+            hmac = tokenize.unkeyedHmac();
+        } else {
+            hmac = tokenize.keyedHmac(this.src, this.sigStart, separator - this.sigStart);
+            macStart = separator + 1;
+        }
+        if (hmac == null || this.end - macStart != SIGNATURE_LENGTH) {
+            return false;
+        }
+
+        hmac.sign(this.src, this.start, this.timeEnd - this.start, this.mac, 0);
+        Base64Codec.encode(this.mac, 0, MAC_LENGTH, this.signature, 0, false);
+        int diff = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            diff |= this.signature[i] ^ this.src[macStart + i];
+        }
+        return diff == 0;
+    }
+
+    private boolean verifyCompact(@Nonnull final Tokenize tokenize) {
+        final HmacEngine hmac = this.keyStart < 0
+                ? tokenize.unkeyedHmac()
+                : tokenize.keyedHmac(this.payload, this.keyStart, this.keyEnd - this.keyStart);
+        final int macLength = this.payloadLength - this.macStart;
+        if (hmac == null || macLength != tokenize.compactMacLength()) {
+            return false;
+        }
+
+        hmac.sign(Tokenize.COMPACT_DOMAIN, this.payload, 0, this.macStart, this.mac, 0);
+        int diff = 0;
+        for (int i = 0; i < macLength; i++) {
+            diff |= this.mac[i] ^ this.payload[this.macStart + i];
+        }
+        return diff == 0;
+    }
+
+    /**
+     * @return 64 bits of the MAC computed by the last successful {@link #verify(Tokenize)}, identifying the token.
+     */
+    long fingerprint() {
+        long fingerprint = 0;
+        for (int i = 0; i < 8; i++) {
+            fingerprint = fingerprint << 8 | this.mac[i] & 0xff;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return The token generation time.
+     */
+    long time() {
+        return this.time;
+    }
+
+    /**
+     * @return The expiry time of the token, or {@link Token#NO_EXPIRY} if it has none.
+     */
+    long expiresAt() {
+        return this.hasExpiry ? this.expiry : Token.NO_EXPIRY;
+    }
+
+    /**
+     * @return The account ID contained in the token.
+     * @throws IllegalArgumentException If the ID part isn't valid Base64.
+     */
+    @Nonnull
+    String accountId() {
+        if (this.hasLongId) {
+            return Long.toString(this.longId);
+        } else if (this.compact) {
+            return new String(this.payload, this.idStart, this.idEnd - this.idStart, StandardCharsets.UTF_8);
+        }
+
+        final int length = this.decode(this.idStart, this.idEnd);
+        if (length < 0) {
+            throw new IllegalArgumentException("Invalid token: malformed account ID");
+        }
+        return new String(this.decoded, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the account ID as a {@code long} without building a {@link String}, for {@link LongAccountFetcher}s.
+     * Compact tokens of {@link LongIdAccount}s carry it in binary; other tokens qualify if their ID is the canonical
+     * decimal form of a {@code long}, as written for {@link LongIdAccount}s.
+     *
+     * @return Whether the ID is a {@code long}, then available from {@link #longId()}.
+     */
+    boolean readLongId() {
+        if (this.hasLongId) {
+            return true;
+        } else if (this.compact) {
+            return false;
+        }
+
+        final int length = this.decode(this.idStart, this.idEnd);
+        if (length <= 0 || length > 20) {
+            return false;
+        }
+        final byte[] digits = this.decoded;
+        final boolean negative = digits[0] == '-';
+        int i = negative ? 1 : 0;
+        if (i == length || digits[i] == '0' && (negative || length > 1)) {
+            return false; // "-", "-0" and leading zeros aren't canonical
+        }
+        // Accumulated negatively, like Long#parseLong, so that Long.MIN_VALUE fits
+        long value = 0;
+        for (; i < length; i++) {
+            final int digit = digits[i] - '0';
+            if (digit < 0 || digit > 9 || value < Long.MIN_VALUE / 10) {
+                return false;
+            }
+            value *= 10;
+            if (value < Long.MIN_VALUE + digit) {
+                return false;
+            }
+            value -= digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            return false;
+        }
+        this.longId = negative ? value : -value;
+        this.hasLongId = true;
+        return true;
+    }
+
+    /**
+     * @return The account ID read by {@link #readLongId()}.
+     */
+    long longId() {
+        return this.longId;
+    }
+
+    /**
+     * @return The token prefix, or {@code null} if it has none.
+     */
+    @Nullable
+    String prefix() {
+        if (this.prefixEnd < 0) {
+            return null;
+        }
+        return new String(this.compact ? this.payload : this.src, this.prefixStart, this.prefixEnd - this.prefixStart, StandardCharsets.UTF_8);
+    }
+
+    private int indexOf(final byte b, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (this.src[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int decode(final int from, final int to) {
+        final int max = Base64Codec.maxDecodedLength(to - from);
+        if (max > this.decoded.length) {
+            this.decoded = new byte[max];
+        }
+        return Base64Codec.decode(this.src, from, to - from, this.decoded, 0);
+    }
+
+    private byte[] buffer(final int length) {
+        if (length <= this.buffer.length) {
+            return this.buffer;
+        }
+        if (length > MAX_RETAINED_LENGTH) {
+            return new byte[length];
+        }
+        return this.buffer = new byte[Math.max(length, this.buffer.length * 2)];
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-client budgets of invalid tokens, so that a client flooding forged tokens stops costing MAC computations and
+ * fetches. Each client draws from a token bucket refilling at a fixed rate; once it's empty, the client is throttled
+ * until it refills. Only malformed and forged tokens draw from it.
+ * <p>
+ * Clients are hashed onto a fixed number of stripes, each holding a single bucket updated with one CAS, as in the
+ * generic cell rate algorithm. Clients sharing a stripe share a budget, so use enough stripes for the number of
+ * clients expected to misbehave at once.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class TokenThrottle {
+    /**
+     * Theoretical arrival time of each stripe, in {@link System#nanoTime()}: how far ahead of now it is tells how much
+     * of the budget is used, the bucket being full when it's in the past.
+     */
+    private final AtomicLongArray arrivals;
+    private final int mask;
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    /**
+     * @param stripes  Number of buckets clients are hashed onto, rounded up to a power of two.
+     * @param refill   Time for a single invalid token to be forgiven.
+     * @param capacity Number of invalid tokens a client can send in a burst before being throttled.
+     */
+    public TokenThrottle(final int stripes, @Nonnull final Duration refill, final int capacity) {
+        if (stripes <= 0 || stripes > 1 << 24) {
+            throw new IllegalArgumentException("Stripes must be between 1 and 2^24");
+        }
+        if (refill.isNegative() || refill.isZero()) {
+            throw new IllegalArgumentException("Refill time must be positive");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        final int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.arrivals = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.intervalNanos = refill.toNanos();
+        this.burstNanos = this.intervalNanos * capacity;
+        final long now = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            this.arrivals.set(i, now);
+        }
+    }
+
+    /**
+     * @param client The client.
+     * @return Whether the bucket of the client is empty.
+     */
+    public boolean isThrottled(@Nonnull final Object client) {
+        return this.arrivals.get(this.stripe(client)) - System.nanoTime() > this.burstNanos - this.intervalNanos;
+    }
+
+    /**
+     * Draws an invalid token from the bucket of a client.
+     *
+     * @param client The client.
+     */
+    public void penalize(@Nonnull final Object client) {
+        final int stripe = this.stripe(client);
+        final long now = System.nanoTime();
+        long arrival;
+        long next;
+        do {
+            arrival = this.arrivals.get(stripe);
+            // Never more than a full burst ahead, so that a throttled client recovers once it stops
+            next = Math.min(Math.max(arrival - now, 0) + this.intervalNanos, this.burstNanos) + now;
+        } while (arrival != next && !this.arrivals.compareAndSet(stripe, arrival, next));
+    }
+
+    private int stripe(final Object client) {
+        int h = client.hashCode() * 0x9e3779b9;
+        return (h ^ h >>> 16) & this.mask;
+    }
+}
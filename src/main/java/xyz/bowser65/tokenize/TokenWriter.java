@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodes and signs tokens straight into a byte array, computing the HMAC once.
+ * <p>
+ * Instances are thread-confined scratch space reused from one token to the next; get one with {@link #get()}.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+final class TokenWriter {
+    private static final ThreadLocal<TokenWriter> LOCAL = ThreadLocal.withInitial(TokenWriter::new);
+
+    private byte[] token = new byte[256];
+    private byte[] payload = new byte[128];
+    private byte[] rawId = new byte[64];
+    private byte[] rawPrefix = new byte[32];
+    private final byte[] rawTime = new byte[20];
+    private final byte[] mac = new byte[TokenReader.MAC_LENGTH];
+
+    private TokenWriter() {
+    }
+
+    @Nonnull
+    static TokenWriter get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * @param tokenize  Tokenize instance holding the secret.
+     * @param prefix    Token prefix, may be {@code null}.
+     * @param account   Account the token is for.
+     * @param genTime   Token generation time.
+     * @param expiresAt Token expiry time, or {@link Token#NO_EXPIRY}. Only compact tokens can carry one, so
+     *                  expiring tokens are always compact.
+     * @return The UTF-8 bytes of the signed token.
+     */
+    @Nonnull
+    static byte[] write(@Nonnull final Tokenize tokenize, @Nullable final String prefix, @Nonnull final IAccount account, final long genTime, final long expiresAt) {
+        final TokenWriter writer = get();
+        return Arrays.copyOf(writer.token, writer.encode(tokenize, prefix, account, genTime, expiresAt));
+    }
+
+    /**
+     * Encodes and signs a token into {@link #buffer()}, which is only valid until the next call.
+     *
+     * @return Number of bytes of the token.
+     * @see #write(Tokenize, String, IAccount, long, long)
+     */
+    int encode(@Nonnull final Tokenize tokenize, @Nullable final String prefix, @Nonnull final IAccount account, final long genTime, final long expiresAt) {
+        final int prefixLength = prefix == null ? -1 : this.utf8Prefix(prefix);
+        final boolean longId = account instanceof LongIdAccount;
+        if (tokenize.getFormat() == TokenFormat.COMPACT || expiresAt != Token.NO_EXPIRY) {
+            if (longId) {
+                return this.encodeCompact(tokenize, prefixLength, ((LongIdAccount) account).getTokenLongId(), -1, genTime, expiresAt);
+            }
+            return this.encodeCompact(tokenize, prefixLength, 0, this.utf8Id(account.getTokenId()), genTime, expiresAt);
+        }
+
+        final int idLength;
+        if (longId) {
+            // Same bytes as the UTF-8 form of getTokenId
+            idLength = writeDecimal(((LongIdAccount) account).getTokenLongId(), this.rawId);
+        } else {
+            idLength = this.utf8Id(account.getTokenId());
+        }
+
+        final int timeLength = writeDecimal(genTime, this.rawTime);
+        final Keyring.Key key = tokenize.signingKey();
+        final HmacEngine hmac = key == null ? tokenize.unkeyedHmac() : key.hmac;
+        final int keyLength = key == null ? 0 : key.rawId.length + 1;
+        final int signedLength = (prefixLength < 0 ? 0 : prefixLength + 1)
+                + Base64Codec.encodedLength(idLength, true) + 1
+                + Base64Codec.encodedLength(timeLength, true);
+        final byte[] token = this.token = grow(this.token, signedLength + 1 + keyLength + TokenReader.SIGNATURE_LENGTH);
+
+        int n = 0;
+        if (prefixLength >= 0) {
+            System.arraycopy(this.rawPrefix, 0, token, 0, prefixLength);
+            n = prefixLength;
+            token[n++] = '.';
+        }
+        n += Base64Codec.encode(this.rawId, 0, idLength, token, n, true);
+        token[n++] = '.';
+        n += Base64Codec.encode(this.rawTime, 0, timeLength, token, n, true);
+
+        hmac.sign(token, 0, n, this.mac, 0);
+        token[n++] = '.';
+        if (key != null) {
+            System.arraycopy(key.rawId, 0, token, n, key.rawId.length);
+            n += key.rawId.length;
+            token[n++] = TokenReader.KEY_ID_SEPARATOR;
+        }
+        return n + Base64Codec.encode(this.mac, 0, this.mac.length, token, n, false);
+    }
+
+    /**
+     * @return The array {@link #encode} writes tokens to.
+     */
+    @Nonnull
+    byte[] buffer() {
+        return this.token;
+    }
+
+    /**
+     * Writes a compact token, laid out as described in {@link TokenReader}.
+     *
+     * @param longId   Binary account ID, used if {@code idLength} is negative.
+     * @param idLength Length of the UTF-8 account ID in {@link #rawId}, or -1.
+     */
+    private int encodeCompact(@Nonnull final Tokenize tokenize, final int prefixLength, final long longId, final int idLength,
+                              final long genTime, final long expiresAt) {
+        final Keyring.Key key = tokenize.signingKey();
+        final HmacEngine hmac = key == null ? tokenize.unkeyedHmac() : key.hmac;
+        final int macLength = tokenize.compactMacLength();
+
+        final byte[] payload = this.payload = grow(this.payload, 2 + (key == null ? 0 : 1 + key.rawId.length) + 10 + 5 + Math.max(idLength, 5)
+                + (prefixLength < 0 ? 0 : 5 + prefixLength) + 10 + TokenReader.MAC_LENGTH);
+        int n = 0;
+        payload[n++] = Tokenize.COMPACT_VERSION;
+        payload[n++] = (byte) ((prefixLength < 0 ? 0 : TokenReader.FLAG_PREFIX)
+                | (expiresAt == Token.NO_EXPIRY ? 0 : TokenReader.FLAG_EXPIRY)
+                | (key == null ? 0 : TokenReader.FLAG_KEYED)
+                | (idLength < 0 ? TokenReader.FLAG_LONG_ID : 0));
+        if (key != null) {
+            payload[n++] = (byte) key.rawId.length;
+            System.arraycopy(key.rawId, 0, payload, n, key.rawId.length);
+            n += key.rawId.length;
+        }
+        n = writeVarint(genTime << 1 ^ genTime >> 63, payload, n);
+        if (idLength < 0) {
+            n = writeVarint(longId << 1 ^ longId >> 63, payload, n);
+        } else {
+            n = writeVarint(idLength, payload, n);
+            System.arraycopy(this.rawId, 0, payload, n, idLength);
+            n += idLength;
+        }
+        if (prefixLength >= 0) {
+            n = writeVarint(prefixLength, payload, n);
+            System.arraycopy(this.rawPrefix, 0, payload, n, prefixLength);
+            n += prefixLength;
+        }
+        if (expiresAt != Token.NO_EXPIRY) {
+            n = writeVarint(expiresAt << 1 ^ expiresAt >> 63, payload, n);
+        }
+
+        // The MAC is computed in place at the end of the payload, then truncated
+        hmac.sign(Tokenize.COMPACT_DOMAIN, payload, 0, n, payload, n);
+        n += macLength;
+
+        this.token = grow(this.token, Base64Codec.encodedLength(n, false));
+        return Base64Codec.encodeUrlSafe(payload, 0, n, this.token, 0);
+    }
+
+    private int utf8Id(final String id) {
+        final byte[] raw = ascii(id) ? null : id.getBytes(StandardCharsets.UTF_8);
+        final int length = raw == null ? id.length() : raw.length;
+        this.rawId = grow(this.rawId, length);
+        copy(id, raw, this.rawId);
+        return length;
+    }
+
+    private int utf8Prefix(final String prefix) {
+        final byte[] raw = ascii(prefix) ? null : prefix.getBytes(StandardCharsets.UTF_8);
+        final int length = raw == null ? prefix.length() : raw.length;
+        this.rawPrefix = grow(this.rawPrefix, length);
+        copy(prefix, raw, this.rawPrefix);
+        return length;
+    }
+
+    private static boolean ascii(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the UTF-8 bytes of {@code value} to {@code dst}: {@code raw} if it's not ASCII, else its characters.
+     */
+    private static void copy(final String value, @Nullable final byte[] raw, final byte[] dst) {
+        if (raw != null) {
+            System.arraycopy(raw, 0, dst, 0, raw.length);
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            dst[i] = (byte) value.charAt(i);
+        }
+    }
+
+    private static byte[] grow(final byte[] array, final int length) {
+        return length <= array.length ? array : new byte[Math.max(length, array.length * 2)];
+    }
+
+    /**
+     * Writes {@code value} as an unsigned varint at {@code offset}.
+     *
+     * @return Offset following the varint.
+     */
+    static int writeVarint(long value, final byte[] dst, int offset) {
+        while ((value & ~0x7fL) != 0) {
+            dst[offset++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        dst[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Writes the decimal representation of {@code value} at the start of {@code dst}.
+     *
+     * @return Number of bytes written.
+     */
+    static int writeDecimal(long value, final byte[] dst) {
+        if (value == Long.MIN_VALUE) {
+            final byte[] min = "-9223372036854775808".getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(min, 0, dst, 0, min.length);
+            return min.length;
+        }
+
+        int n = 0;
+        if (value < 0) {
+            dst[n++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = n + digits - 1; i >= n; i--) {
+            dst[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return n + digits;
+    }
+}
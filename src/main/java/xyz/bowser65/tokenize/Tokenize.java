@@ -27,17 +27,26 @@
 
 package xyz.bowser65.tokenize;
 
+import lombok.Getter;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
-import java.util.Base64;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Tokenize main class
@@ -51,18 +60,160 @@ public class Tokenize {
      */
     public static final int VERSION = 1;
 
+    /**
+     * Tokenize Token Format version of tokens naming the {@link Keyring} key they are signed with.
+     */
+    public static final int KEYED_VERSION = 2;
+
+    /**
+     * Tokenize Token Format version of compact tokens.
+     *
+     * @see TokenFormat#COMPACT
+     */
+    public static final byte COMPACT_VERSION = 3;
+
     /**
      * First millisecond of 2019, used to get shorter tokens.
      */
     public static final long TOKENIZE_EPOCH = 1546300800000L;
 
     /**
-     * Secret used to sign tokens.
+     * Batches at least this large get their signatures verified in parallel.
+     */
+    private static final int PARALLEL_BATCH_SIZE = 256;
+
+    /**
+     * Constant prefix of every signed message.
+     */
+    private static final byte[] SIGNATURE_DOMAIN = ("TTF." + VERSION + ".").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Constant prefix of every signed compact payload.
+     */
+    static final byte[] COMPACT_DOMAIN = ("TTF." + COMPACT_VERSION + ".").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * HMAC engine keyed with the secret used to sign unkeyed tokens, {@code null} if they aren't accepted.
+     */
+    @Nullable
+    private final HmacEngine hmac;
+
+    /**
+     * Keys used to sign and validate keyed tokens, {@code null} if they aren't used.
+     */
+    @Nullable
+    private final Keyring keyring;
+
+    /**
+     * Format of generated tokens.
+     */
+    @Getter
+    @Nonnull
+    private final TokenFormat format;
+
+    /**
+     * Length of the truncated MAC of compact tokens, in bytes.
+     */
+    private final int compactMacLength;
+
+    /**
+     * Clock token times are read from.
+     */
+    @Nonnull
+    private final Clock clock;
+
+    /**
+     * Age, in seconds, past which tokens are rejected whatever their expiry time.
+     */
+    private final long maxAge;
+
+    /**
+     * Seconds tokens may be ahead of the clock of this instance, generated by a node whose clock is ahead.
+     */
+    private final long clockSkew;
+
+    /**
+     * Budgets of invalid tokens per client, {@code null} if clients aren't throttled.
+     */
+    @Nullable
+    private final TokenThrottle throttle;
+
+    /**
+     * Individually revoked tokens, {@code null} if there is no store.
      */
-    private final byte[] secret;
+    @Nullable
+    private final RevocationStore revocations;
 
+    /**
+     * Receives validation timings and outcomes.
+     */
+    @Nonnull
+    private final ValidationListener listener;
+
+    /**
+     * Whether a listener is set, so that validations without one don't read the clock.
+     */
+    private final boolean timed;
+
+    /**
+     * Creates a Tokenize instance signing and validating TTF {@value #VERSION} tokens with a single secret.
+     *
+     * @param secret Secret used to sign tokens.
+     */
     public Tokenize(final byte[] secret) {
-        this.secret = secret;
+        this(builder().secret(secret));
+    }
+
+    /**
+     * Creates a Tokenize instance signing TTF {@value #KEYED_VERSION} tokens with the active key of a keyring, and
+     * validating them with the key they name.
+     *
+     * @param keyring Keys used to sign and validate tokens.
+     * @since 1.1.0
+     */
+    public Tokenize(@Nonnull final Keyring keyring) {
+        this(builder().keyring(keyring));
+    }
+
+    /**
+     * Creates a Tokenize instance signing TTF {@value #KEYED_VERSION} tokens with the active key of a keyring, while
+     * still accepting TTF {@value #VERSION} tokens signed with a single secret. Used to migrate to keyed tokens.
+     *
+     * @param secret  Secret TTF {@value #VERSION} tokens were signed with.
+     * @param keyring Keys used to sign and validate keyed tokens.
+     * @since 1.1.0
+     */
+    public Tokenize(@Nonnull final byte[] secret, @Nonnull final Keyring keyring) {
+        this(builder().secret(secret).keyring(keyring));
+    }
+
+    private Tokenize(@Nonnull final Builder builder) {
+        if (builder.secret == null && builder.keyring == null) {
+            throw new IllegalArgumentException("Either a secret or a keyring is required");
+        }
+        if (builder.revocations != null && builder.maxAge > builder.revocations.maxAge()) {
+            throw new IllegalArgumentException("Max age cannot exceed the one of the revocation store");
+        }
+        this.hmac = builder.secret == null ? null : new HmacEngine("HmacSHA256", builder.secret, SIGNATURE_DOMAIN);
+        this.keyring = builder.keyring;
+        this.format = builder.format;
+        this.compactMacLength = builder.compactMacLength;
+        this.clock = builder.clock;
+        this.maxAge = builder.maxAge;
+        this.clockSkew = builder.clockSkew;
+        this.throttle = builder.throttle;
+        this.revocations = builder.revocations;
+        this.listener = builder.listener;
+        this.timed = builder.listener != ValidationListener.NOOP;
+    }
+
+    /**
+     * @return A builder for Tokenize instances with non-default settings.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public static Builder builder() {
+        return new Builder();
     }
 
     @Nonnull
@@ -72,7 +223,23 @@ public class Tokenize {
 
     @Nonnull
     public Token generateToken(@Nonnull final IAccount account, @Nullable final String prefix) {
-        return new Token(this, account, prefix, currentTokenTime());
+        return new Token(this, account, prefix, this.tokenTime());
+    }
+
+    /**
+     * Generates a token that expires after some time. Expired tokens are rejected before their account is fetched.
+     * Only compact tokens can carry an expiry time, so the token is compact whatever the configured format is.
+     *
+     * @param account    The account.
+     * @param prefix     The token prefix, may be {@code null}.
+     * @param timeToLive How long the token is valid, rounded down to the second.
+     * @return The token.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public Token generateToken(@Nonnull final IAccount account, @Nullable final String prefix, @Nonnull final Duration timeToLive) {
+        final long now = this.tokenTime();
+        return new Token(this, account, prefix, now, now + timeToLive.getSeconds());
     }
 
     /**
@@ -80,18 +247,56 @@ public class Tokenize {
      *
      * @param token          The token to validate.
      * @param accountFetcher The account fetcher used to retrieve the account.
-     * @return The token, or {@code null} if there is no account associated or if the token has been revoked.
+     * @return The token, or {@code null} if it's expired, if there is no account associated or if the token has been revoked.
      * @throws SignatureException If the token signature is invalid.
      */
     @Nullable
     public Token validateToken(@Nonnull final String token, @Nonnull AccountFetcher accountFetcher) throws SignatureException {
-        final String[] parts = parseToken(token);
-        final long tokenTime = Long.parseLong(parts[2]);
-        final IAccount account = accountFetcher.fetchAccount(parts[1]);
-        if (account != null && tokenTime > account.tokensValidSince()) {
-            return new Token(this, account, parts[0], tokenTime);
-        }
-        return null;
+        return this.validateToken(TokenReader.get().wrap(token), accountFetcher);
+    }
+
+    /**
+     * Validates a token synchronously, without building intermediate strings.
+     *
+     * @param token          The token to validate.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return The token, or {@code null} if it's expired, if there is no account associated or if the token has been revoked.
+     * @throws SignatureException If the token signature is invalid.
+     * @since 1.1.0
+     */
+    @Nullable
+    public Token validateToken(@Nonnull final CharSequence token, @Nonnull AccountFetcher accountFetcher) throws SignatureException {
+        return this.validateToken(TokenReader.get().wrap(token), accountFetcher);
+    }
+
+    /**
+     * Validates a token stored as UTF-8 bytes synchronously, without copying it.
+     *
+     * @param token          Array holding the token.
+     * @param offset         Offset of the token in the array.
+     * @param length         Length of the token.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return The token, or {@code null} if it's expired, if there is no account associated or if the token has been revoked.
+     * @throws SignatureException If the token signature is invalid.
+     * @since 1.1.0
+     */
+    @Nullable
+    public Token validateToken(@Nonnull final byte[] token, final int offset, final int length, @Nonnull AccountFetcher accountFetcher) throws SignatureException {
+        return this.validateToken(TokenReader.get().wrap(token, offset, length), accountFetcher);
+    }
+
+    /**
+     * Validates the remaining UTF-8 bytes of a buffer as a token synchronously. The buffer position is left untouched.
+     *
+     * @param token          Buffer holding the token.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return The token, or {@code null} if it's expired, if there is no account associated or if the token has been revoked.
+     * @throws SignatureException If the token signature is invalid.
+     * @since 1.1.0
+     */
+    @Nullable
+    public Token validateToken(@Nonnull final ByteBuffer token, @Nonnull AccountFetcher accountFetcher) throws SignatureException {
+        return this.validateToken(TokenReader.get().wrap(token), accountFetcher);
     }
 
     /**
@@ -99,48 +304,402 @@ public class Tokenize {
      *
      * @param token          The token to validate.
      * @param accountFetcher The account fetcher used to retrieve the account.
-     * @return A {@link CompletionStage}.
+     * @return A {@link CompletionStage}, completed exceptionally if the account fetch fails.
      * @throws SignatureException If the token signature is invalid.
      */
     @Nullable
     public CompletionStage<Token> validateToken(@Nonnull final String token, @Nonnull AsyncAccountFetcher accountFetcher) throws SignatureException {
-        final CompletableFuture<Token> future = new CompletableFuture<>();
-        final String[] parts = parseToken(token);
-        final long tokenTime = Long.parseLong(parts[2]);
-        accountFetcher.fetchAccount(parts[1]).thenAccept(account -> {
-            if (account != null && tokenTime > account.tokensValidSince()) {
-                future.complete(new Token(this, account, parts[0], tokenTime));
+        return this.validateToken(TokenReader.get().wrap(token), accountFetcher);
+    }
+
+    /**
+     * Validates a token asynchronously, without building intermediate strings.
+     *
+     * @param token          The token to validate.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return A {@link CompletionStage}, completed exceptionally if the account fetch fails.
+     * @throws SignatureException If the token signature is invalid.
+     * @since 1.1.0
+     */
+    @Nullable
+    public CompletionStage<Token> validateToken(@Nonnull final CharSequence token, @Nonnull AsyncAccountFetcher accountFetcher) throws SignatureException {
+        return this.validateToken(TokenReader.get().wrap(token), accountFetcher);
+    }
+
+    /**
+     * Validates a token stored as UTF-8 bytes asynchronously, without copying it.
+     *
+     * @param token          Array holding the token.
+     * @param offset         Offset of the token in the array.
+     * @param length         Length of the token.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return A {@link CompletionStage}, completed exceptionally if the account fetch fails.
+     * @throws SignatureException If the token signature is invalid.
+     * @since 1.1.0
+     */
+    @Nullable
+    public CompletionStage<Token> validateToken(@Nonnull final byte[] token, final int offset, final int length, @Nonnull AsyncAccountFetcher accountFetcher) throws SignatureException {
+        return this.validateToken(TokenReader.get().wrap(token, offset, length), accountFetcher);
+    }
+
+    /**
+     * Validates the remaining UTF-8 bytes of a buffer as a token asynchronously. The buffer position is left untouched.
+     *
+     * @param token          Buffer holding the token.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return A {@link CompletionStage}, completed exceptionally if the account fetch fails.
+     * @throws SignatureException If the token signature is invalid.
+     * @since 1.1.0
+     */
+    @Nullable
+    public CompletionStage<Token> validateToken(@Nonnull final ByteBuffer token, @Nonnull AsyncAccountFetcher accountFetcher) throws SignatureException {
+        return this.validateToken(TokenReader.get().wrap(token), accountFetcher);
+    }
+
+    private Token validateToken(@Nonnull final TokenReader reader, @Nonnull AccountFetcher accountFetcher) throws SignatureException {
+        final long now = this.tokenTime();
+        this.parseToken(reader, now);
+        final long tokenTime = reader.time();
+        final long expiresAt = reader.expiresAt();
+        if (this.isExpired(tokenTime, expiresAt, now)) {
+            this.listener.onOutcome(ValidationResult.Status.EXPIRED);
+            return null;
+        }
+        if (this.isRevoked(reader)) {
+            this.listener.onOutcome(ValidationResult.Status.REVOKED);
+            return null;
+        }
+
+        final String prefix = reader.prefix();
+        final long start = this.timed ? System.nanoTime() : 0;
+        final IAccount account = fetch(reader, accountFetcher);
+        if (this.timed) {
+            this.lap(ValidationPhase.FETCH, start);
+        }
+        return this.checkAccount(account, prefix, tokenTime, expiresAt);
+    }
+
+    private CompletionStage<Token> validateToken(@Nonnull final TokenReader reader, @Nonnull AsyncAccountFetcher accountFetcher) throws SignatureException {
+        final long now = this.tokenTime();
+        this.parseToken(reader, now);
+        final long tokenTime = reader.time();
+        final long expiresAt = reader.expiresAt();
+        if (this.isExpired(tokenTime, expiresAt, now)) {
+            this.listener.onOutcome(ValidationResult.Status.EXPIRED);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (this.isRevoked(reader)) {
+            this.listener.onOutcome(ValidationResult.Status.REVOKED);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final String prefix = reader.prefix();
+        final long start = this.timed ? System.nanoTime() : 0;
+        return accountFetcher.fetchAccount(reader.accountId()).thenApply(account -> {
+            if (this.timed) {
+                this.lap(ValidationPhase.FETCH, start);
             }
-            future.complete(null);
+            return this.checkAccount(account, prefix, tokenTime, expiresAt);
         });
-        return future;
     }
 
-    private String[] parseToken(@Nonnull final String token) throws SignatureException {
-        final String[] parts = token.split("\\.");
-        String[] parsed = new String[4];
-        if (parts.length != 3 && parts.length != 4) {
-            throw new IllegalArgumentException("Invalid token: expected 3 or 4 parts, got " + parts.length);
+    /**
+     * Fetches the account of a verified token, by its {@code long} ID when both the fetcher and the token allow it.
+     */
+    @Nullable
+    private static IAccount fetch(@Nonnull final TokenReader reader, @Nonnull final AccountFetcher accountFetcher) {
+        if (accountFetcher instanceof LongAccountFetcher && reader.readLongId()) {
+            return ((LongAccountFetcher) accountFetcher).fetchAccount(reader.longId());
+        }
+        return accountFetcher.fetchAccount(reader.accountId());
+    }
+
+    /**
+     * Last step of single token validations, checking the token wasn't revoked by its account.
+     *
+     * @return The token, or {@code null} if there is no account or if the token was revoked.
+     */
+    @Nullable
+    private Token checkAccount(@Nullable final IAccount account, @Nullable final String prefix, final long tokenTime, final long expiresAt) {
+        if (account == null) {
+            this.listener.onOutcome(ValidationResult.Status.UNKNOWN_ACCOUNT);
+            return null;
+        }
+        if (tokenTime <= account.tokensValidSince()) {
+            this.listener.onOutcome(ValidationResult.Status.REVOKED);
+            return null;
         }
+        this.listener.onOutcome(ValidationResult.Status.VALID);
+        return new Token(this, account, prefix, tokenTime, expiresAt);
+    }
 
-        int index = 0;
-        boolean signatureValid;
-        if (parts.length == 4) {
-            signatureValid = computeHmac(parts[0] + '.' + parts[1] + '.' + parts[2]).equals(parts[3]);
-            parsed[0] = parts[0];
-            index++;
+    /**
+     * Validates a token without throwing on invalid ones, for endpoints exposed to floods of forged tokens.
+     *
+     * @param token          The token to validate.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return The result of the validation.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public ValidationResult tryValidateToken(@Nonnull final CharSequence token, @Nonnull final AccountFetcher accountFetcher) {
+        return this.tryValidateToken(TokenReader.get().wrap(token), null, accountFetcher);
+    }
+
+    /**
+     * Validates a token on behalf of a client without throwing on invalid ones. When a {@link TokenThrottle} is set,
+     * clients that sent too many malformed or forged tokens get {@link ValidationResult.Status#THROTTLED} without
+     * their tokens being looked at, until their budget refills.
+     *
+     * @param token          The token to validate.
+     * @param client         Identifies the client, e.g. its address.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return The result of the validation.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public ValidationResult tryValidateToken(@Nonnull final CharSequence token, @Nonnull final Object client, @Nonnull final AccountFetcher accountFetcher) {
+        if (this.throttle != null && this.throttle.isThrottled(client)) {
+            this.listener.onOutcome(ValidationResult.Status.THROTTLED);
+            return ValidationResult.THROTTLED;
+        }
+        return this.tryValidateToken(TokenReader.get().wrap(token), client, accountFetcher);
+    }
+
+    @Nonnull
+    private ValidationResult tryValidateToken(@Nonnull final TokenReader reader, @Nullable final Object client, @Nonnull final AccountFetcher accountFetcher) {
+        final long now = this.tokenTime();
+        final ValidationResult rejection;
+        if (!this.split(reader, now)) {
+            rejection = ValidationResult.MALFORMED;
+        } else if (!this.verify(reader)) {
+            rejection = ValidationResult.BAD_SIGNATURE;
         } else {
-            signatureValid = computeHmac(parts[0] + '.' + parts[1]).equals(parts[2]);
-            parsed[0] = null;
+            rejection = null;
+        }
+        if (rejection != null) {
+            if (this.throttle != null && client != null) {
+                this.throttle.penalize(client);
+            }
+            this.listener.onOutcome(rejection.getStatus());
+            return rejection;
+        }
+
+        final long tokenTime = reader.time();
+        final long expiresAt = reader.expiresAt();
+        if (this.isExpired(tokenTime, expiresAt, now)) {
+            this.listener.onOutcome(ValidationResult.Status.EXPIRED);
+            return ValidationResult.EXPIRED;
         }
+        if (this.isRevoked(reader)) {
+            this.listener.onOutcome(ValidationResult.Status.REVOKED);
+            return ValidationResult.REVOKED;
+        }
+
+        final String prefix = reader.prefix();
+        final long start = this.timed ? System.nanoTime() : 0;
+        final IAccount account = fetch(reader, accountFetcher);
+        if (this.timed) {
+            this.lap(ValidationPhase.FETCH, start);
+        }
+        final Token token = this.checkAccount(account, prefix, tokenTime, expiresAt);
+        if (token != null) {
+            return ValidationResult.valid(token);
+        }
+        return account == null ? ValidationResult.UNKNOWN_ACCOUNT : ValidationResult.REVOKED;
+    }
 
-        if (!signatureValid) {
-            throw new SignatureException("Invalid signature");
+    /**
+     * Validates many tokens at once. Signatures and expiry are checked first, in parallel for large batches, so that
+     * forged and expired tokens are dropped before any I/O. The account IDs of the remaining tokens are then resolved with a single
+     * call to the fetcher.
+     *
+     * @param tokens         The tokens to validate.
+     * @param accountFetcher The account fetcher used to retrieve the accounts.
+     * @return The result of the validation of each token, in iteration order of {@code tokens}.
+     * @since 1.1.0
+     */
+    @Nonnull
+    public List<ValidationResult> validateTokens(@Nonnull final Collection<? extends CharSequence> tokens, @Nonnull final BatchAccountFetcher accountFetcher) {
+        final CharSequence[] raw = tokens.toArray(new CharSequence[0]);
+        final ValidationResult[] results = new ValidationResult[raw.length];
+        final String[] ids = new String[raw.length], prefixes = new String[raw.length];
+        final long[] times = new long[raw.length], expiries = new long[raw.length];
+        final long now = this.tokenTime();
+
+        final IntConsumer verify = i -> {
+            final TokenReader reader = TokenReader.get().wrap(raw[i]);
+            results[i] = this.precheck(reader, now);
+            if (results[i] == null) {
+                try {
+                    times[i] = reader.time();
+                    expiries[i] = reader.expiresAt();
+                    ids[i] = reader.accountId();
+                    prefixes[i] = reader.prefix();
+                } catch (IllegalArgumentException e) {
+                    results[i] = ValidationResult.MALFORMED;
+                }
+            }
+        };
+        if (raw.length >= PARALLEL_BATCH_SIZE) {
+            IntStream.range(0, raw.length).parallel().forEach(verify);
+        } else {
+            for (int i = 0; i < raw.length; i++) {
+                verify.accept(i);
+            }
+        }
+
+        final Set<String> unique = new HashSet<>();
+        for (final String id : ids) {
+            if (id != null) {
+                unique.add(id);
+            }
+        }
+        final long start = this.timed ? System.nanoTime() : 0;
+        final Map<String, IAccount> accounts = unique.isEmpty() ? Collections.emptyMap() : accountFetcher.fetchAccounts(unique);
+        if (this.timed && !unique.isEmpty()) {
+            this.lap(ValidationPhase.FETCH, start);
+        }
+
+        for (int i = 0; i < raw.length; i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            final IAccount account = accounts.get(ids[i]);
+            if (account == null) {
+                results[i] = ValidationResult.UNKNOWN_ACCOUNT;
+            } else if (times[i] > account.tokensValidSince()) {
+                results[i] = ValidationResult.valid(new Token(this, account, prefixes[i], times[i], expiries[i]));
+            } else {
+                results[i] = ValidationResult.REVOKED;
+            }
+        }
+        if (this.listener != ValidationListener.NOOP) {
+            for (final ValidationResult result : results) {
+                this.listener.onOutcome(result.getStatus());
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Runs the checks of a validation that don't need the account: structure, signature, expiry and revocation store.
+     * Outcomes aren't reported to the listener.
+     *
+     * @return The rejection, or {@code null} if the account of the token is to be fetched.
+     */
+    @Nullable
+    ValidationResult precheck(@Nonnull final TokenReader reader, final long now) {
+        if (!this.split(reader, now)) {
+            return ValidationResult.MALFORMED;
+        } else if (!this.verify(reader)) {
+            return ValidationResult.BAD_SIGNATURE;
+        } else if (this.isExpired(reader.time(), reader.expiresAt(), now)) {
+            return ValidationResult.EXPIRED;
+        } else if (this.isRevoked(reader)) {
+            return ValidationResult.REVOKED;
+        }
+        return null;
+    }
+
+    private void parseToken(@Nonnull final TokenReader reader, final long now) throws SignatureException {
+        if (!this.split(reader, now)) {
+            this.listener.onOutcome(ValidationResult.Status.MALFORMED);
+            throw new MalformedTokenException();
+        }
+        if (!this.verify(reader)) {
+            this.listener.onOutcome(ValidationResult.Status.BAD_SIGNATURE);
+            throw new InvalidSignatureException();
+        }
+    }
+
+    /**
+     * @return Whether the verified token of {@code reader} is in the revocation store.
+     */
+    private boolean isRevoked(@Nonnull final TokenReader reader) {
+        if (this.revocations == null) {
+            return false;
+        }
+        if (!this.timed) {
+            return this.revocations.isRevoked(reader.fingerprint());
+        }
+        final long start = System.nanoTime();
+        final boolean revoked = this.revocations.isRevoked(reader.fingerprint());
+        this.lap(ValidationPhase.REVOCATION, start);
+        return revoked;
+    }
+
+    /**
+     * Splits the token and checks its structure and time, without computing any MAC.
+     *
+     * @return {@code false} if the token is malformed, or was generated before the Tokenize epoch or in the future.
+     */
+    private boolean split(@Nonnull final TokenReader reader, final long now) {
+        final long start = this.timed ? System.nanoTime() : 0;
+        final boolean split = reader.split() && reader.time() >= 0 && reader.time() <= now + this.clockSkew;
+        if (this.timed) {
+            this.lap(ValidationPhase.PARSE, start);
+        }
+        return split;
+    }
+
+    private boolean verify(@Nonnull final TokenReader reader) {
+        if (!this.timed) {
+            return reader.verify(this);
+        }
+        final long start = System.nanoTime();
+        final boolean verified = reader.verify(this);
+        this.lap(ValidationPhase.MAC, start);
+        return verified;
+    }
+
+    private void lap(@Nonnull final ValidationPhase phase, final long start) {
+        this.listener.onPhase(phase, System.nanoTime() - start);
+    }
+
+    /**
+     * Revokes a single token: it'll be rejected from now on, with a {@link ValidationResult.Status#REVOKED} outcome,
+     * while the other tokens of its account stay valid.
+     *
+     * @param token The token to revoke.
+     * @return {@code false} if the token is already older than the max age, and so rejected without being revoked.
+     * @throws IllegalStateException    If there is no revocation store.
+     * @throws IllegalArgumentException If the token is malformed.
+     * @throws SignatureException       If the token signature is invalid.
+     * @since 1.1.0
+     */
+    public boolean revokeToken(@Nonnull final CharSequence token) throws SignatureException {
+        if (this.revocations == null) {
+            throw new IllegalStateException("No revocation store is set");
+        }
+        final TokenReader reader = TokenReader.get().wrap(token);
+        if (!reader.split()) {
+            throw new MalformedTokenException();
+        }
+        if (!reader.verify(this)) {
+            throw new InvalidSignatureException();
+        }
+        return this.revocations.revoke(reader.fingerprint(), reader.time(), this.tokenTime());
+    }
+
+    /**
+     * @return Fingerprint of a valid token, to check with {@link #isRevoked(long)} whether it was revoked since, or
+     * {@code 0} if there is no revocation store.
+     */
+    long revocationFingerprint(@Nonnull final CharSequence token) {
+        if (this.revocations == null) {
+            return 0;
         }
+        final TokenReader reader = TokenReader.get().wrap(token);
+        return reader.split() && reader.verify(this) ? reader.fingerprint() : 0;
+    }
 
-        parsed[1] = new String(Base64.getDecoder().decode(parts[index].getBytes(StandardCharsets.UTF_8)));
-        parsed[2] = new String(Base64.getDecoder().decode(parts[1 + index].getBytes(StandardCharsets.UTF_8)));
-        return parsed;
+    /**
+     * @param fingerprint Fingerprint of the token, see {@link #revocationFingerprint(CharSequence)}.
+     * @return Whether the token is in the revocation store.
+     */
+    boolean isRevoked(final long fingerprint) {
+        return this.revocations != null && this.revocations.isRevoked(fingerprint);
     }
 
     /**
@@ -150,18 +709,250 @@ public class Tokenize {
         return (System.currentTimeMillis() - TOKENIZE_EPOCH) / 1000;
     }
 
-    String computeHmac(final String string) {
-        try {
-            final Mac hmac = Mac.getInstance("HmacSHA256");
-            final SecretKeySpec key = new SecretKeySpec(secret, "HmacSHA256");
-            hmac.init(key);
+    /**
+     * @return Current token time based on the Tokenize Epoch, according to the clock of this instance.
+     * @since 1.1.0
+     */
+    public long tokenTime() {
+        return (this.clock.millis() - TOKENIZE_EPOCH) / 1000;
+    }
+
+    /**
+     * @return Whether a token generated at {@code genTime} is expired at {@code now}, either because of its own expiry
+     * time or because it's older than the max age.
+     */
+    boolean isExpired(final long genTime, final long expiresAt, final long now) {
+        return now >= expiresAt || now - genTime > this.maxAge;
+    }
+
+    /**
+     * @return Nanoseconds until a token generated at {@code genTime} gets expired according to
+     * {@link #isExpired(long, long, long)} and the clock of this instance, 0 if it already is, or
+     * {@link Long#MAX_VALUE} if it never will.
+     */
+    long nanosUntilExpiry(final long genTime, final long expiresAt) {
+        // Expired from the start of the second expiresAt, or of the second after genTime + maxAge
+        final long ageLimit = this.maxAge >= Long.MAX_VALUE - 1 - Math.max(genTime, 0) ? Long.MAX_VALUE : genTime + this.maxAge + 1;
+        final long deadline = Math.min(expiresAt, ageLimit);
+        if (deadline > (Long.MAX_VALUE - TOKENIZE_EPOCH) / 1000) {
+            return Long.MAX_VALUE;
+        }
+        final long remaining = TOKENIZE_EPOCH + deadline * 1000 - this.clock.millis();
+        if (remaining <= 0) {
+            return 0;
+        }
+        return remaining > Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : remaining * 1_000_000;
+    }
+
+    /**
+     * @return Length of the truncated MAC of compact tokens, in bytes.
+     */
+    int compactMacLength() {
+        return this.compactMacLength;
+    }
+
+    /**
+     * @return The engine checking unkeyed tokens, or {@code null} if they aren't accepted.
+     */
+    @Nullable
+    HmacEngine unkeyedHmac() {
+        return this.hmac;
+    }
+
+    /**
+     * @return The engine of the key whose ID is stored in {@code src[offset..offset+length)}, or {@code null}.
+     */
+    @Nullable
+    HmacEngine keyedHmac(final byte[] src, final int offset, final int length) {
+        if (this.keyring == null) {
+            return null;
+        }
+        final Keyring.Key key = this.keyring.find(src, offset, length);
+        return key == null ? null : key.hmac;
+    }
+
+    /**
+     * @return The key new tokens are signed with, or {@code null} if they're unkeyed.
+     */
+    @Nullable
+    Keyring.Key signingKey() {
+        return this.keyring == null ? null : this.keyring.activeKey();
+    }
+
+    /**
+     * Builder for {@link Tokenize} instances
+     *
+     * @since 1.1.0
+     */
+    public static final class Builder {
+        private byte[] secret;
+        private Keyring keyring;
+        private TokenFormat format = TokenFormat.TEXT;
+        private int compactMacLength = 16;
+        private Clock clock = Clock.systemUTC();
+        private long maxAge = Long.MAX_VALUE;
+        private ValidationListener listener = ValidationListener.NOOP;
+        private RevocationStore revocations;
+        private TokenThrottle throttle;
+        private long clockSkew = 300;
+
+        private Builder() {
+        }
+
+        /**
+         * @param secret Secret unkeyed tokens are signed with. When a keyring is set too, unkeyed tokens are
+         *               only accepted, and new tokens are signed with the keyring.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder secret(@Nonnull final byte[] secret) {
+            this.secret = secret;
+            return this;
+        }
+
+        /**
+         * @param keyring Keys keyed tokens are signed and validated with.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder keyring(@Nonnull final Keyring keyring) {
+            this.keyring = keyring;
+            return this;
+        }
+
+        /**
+         * @param format Format of generated tokens. Defaults to {@link TokenFormat#TEXT}.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder format(@Nonnull final TokenFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * @param compactMacLength Length, in bytes, the MAC of compact tokens is truncated to. Between 8 and 32,
+         *                         defaults to 16. Compact tokens with a MAC of another length are rejected.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder compactMacLength(final int compactMacLength) {
+            if (compactMacLength < TokenReader.MIN_COMPACT_MAC_LENGTH || compactMacLength > TokenReader.MAC_LENGTH) {
+                throw new IllegalArgumentException("Compact MAC length must be between " + TokenReader.MIN_COMPACT_MAC_LENGTH
+                        + " and " + TokenReader.MAC_LENGTH + " bytes");
+            }
+            this.compactMacLength = compactMacLength;
+            return this;
+        }
+
+        /**
+         * @param clock Clock token times are read from. Defaults to the system clock.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder clock(@Nonnull final Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param maxAge Age past which tokens are rejected, before their account is fetched, whatever their expiry
+         *               time. Unlimited by default.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder maxAge(@Nonnull final Duration maxAge) {
+            if (maxAge.isNegative()) {
+                throw new IllegalArgumentException("Max age cannot be negative");
+            }
+            this.maxAge = maxAge.getSeconds();
+            return this;
+        }
+
+        /**
+         * @param listener Listener receiving validation timings and outcomes, e.g. a {@link ValidationMetrics}.
+         *                 None by default.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder listener(@Nonnull final ValidationListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * @param revocations Store of individually revoked tokens, checked after the signature and before the
+         *                    account is fetched. Its max age must be at least the {@link #maxAge(Duration) one} of
+         *                    the tokens. None by default.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder revocationStore(@Nonnull final RevocationStore revocations) {
+            this.revocations = revocations;
+            return this;
+        }
+
+        /**
+         * @param throttle Budgets of invalid tokens per client, enforced by
+         *                 {@link #tryValidateToken(CharSequence, Object, AccountFetcher)}. None by default.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder throttle(@Nonnull final TokenThrottle throttle) {
+            this.throttle = throttle;
+            return this;
+        }
+
+        /**
+         * @param clockSkew How far in the future token times may be, to accept tokens generated by nodes whose
+         *                  clock is ahead. Tokens further in the future are rejected as malformed before their
+         *                  signature is checked. Defaults to 5 minutes.
+         * @return This builder.
+         */
+        @Nonnull
+        public Builder clockSkew(@Nonnull final Duration clockSkew) {
+            if (clockSkew.isNegative()) {
+                throw new IllegalArgumentException("Clock skew cannot be negative");
+            }
+            this.clockSkew = clockSkew.getSeconds();
+            return this;
+        }
+
+        @Nonnull
+        public Tokenize build() {
+            return new Tokenize(this);
+        }
+    }
+
+    /**
+     * Thrown for tokens that are neither made of 3 or 4 parts nor compact. Stackless so that rejecting junk stays cheap.
+     */
+    private static final class MalformedTokenException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        private MalformedTokenException() {
+            super("Invalid token: expected 3 or 4 parts, or a compact token");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Thrown for tokens with an invalid signature. Stackless so that rejecting forgeries stays cheap.
+     */
+    private static final class InvalidSignatureException extends SignatureException {
+        private static final long serialVersionUID = 1L;
+
+        private InvalidSignatureException() {
+            super("Invalid signature");
+        }
 
-            final byte[] data = hmac.doFinal(("TTF." + VERSION + "." + string).getBytes(StandardCharsets.UTF_8));
-            return new String(Base64.getEncoder().encode(data)).replace("=", "");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Tokenize is unable to function if HmacSHA256 algorithm isn't present!", e);
-        } catch (InvalidKeyException e) {
-            throw new RuntimeException("is this ever reachable?", e);
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
         }
     }
 }
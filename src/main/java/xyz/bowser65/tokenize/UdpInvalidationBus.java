@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link InvalidationBus} sending batches to a list of peers over UDP, for local multi-node setups and tests.
+ * Datagrams aren't authenticated nor retransmitted: only use it on a trusted network, where a lost invalidation
+ * costs no more than waiting for the cache entry to expire.
+ * <p>
+ * Each datagram holds a magic number, a count, then for each invalidation the length of the UTF-8 account ID, the
+ * ID and the new tokens valid since time. Batches too large for one datagram are split.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class UdpInvalidationBus extends AbstractInvalidationBus {
+    /**
+     * Payload size datagrams are kept under, so that they don't get fragmented on common networks.
+     */
+    static final int MAX_DATAGRAM_LENGTH = 1400;
+    private static final int MAGIC = 0x54494231; // TIB1
+    private static final int HEADER_LENGTH = 4 + 2;
+    private static final int MAX_ID_LENGTH = MAX_DATAGRAM_LENGTH - HEADER_LENGTH - 2 - 8;
+
+    private final DatagramChannel channel;
+    private final List<InetSocketAddress> peers = new CopyOnWriteArrayList<>();
+    private final Thread receiver;
+
+    /**
+     * @param bind         Local address to receive invalidations on, port 0 for any free port.
+     * @param window       How long to gather invalidations before sending a batch.
+     * @param maxBatchSize Batches are sent as soon as they reach this many distinct accounts.
+     * @throws IOException If the socket can't be bound.
+     */
+    public UdpInvalidationBus(@Nonnull final InetSocketAddress bind, @Nonnull final Duration window, final int maxBatchSize) throws IOException {
+        super(window, maxBatchSize);
+        this.channel = DatagramChannel.open().bind(bind);
+        this.receiver = new Thread(this::receive, "tokenize-udp-invalidation-bus");
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+    }
+
+    /**
+     * @param peer Address of another node's bus to send invalidations to.
+     */
+    public void addPeer(@Nonnull final InetSocketAddress peer) {
+        this.peers.add(peer);
+    }
+
+    /**
+     * @param peer Address of a node's bus to stop sending invalidations to.
+     */
+    public void removePeer(@Nonnull final InetSocketAddress peer) {
+        this.peers.remove(peer);
+    }
+
+    /**
+     * @return Address invalidations are received on.
+     * @throws IOException If the socket is closed.
+     */
+    @Nonnull
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) this.channel.getLocalAddress();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the UTF-8 encoded account ID doesn't fit in a datagram.
+     */
+    @Override
+    public void publish(@Nonnull final String accountId, final long tokensValidSince) {
+        if (accountId.getBytes(StandardCharsets.UTF_8).length > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("Account ID too long to be sent, at most " + MAX_ID_LENGTH + " UTF-8 bytes");
+        }
+        super.publish(accountId, tokensValidSince);
+    }
+
+    @Override
+    protected void transmit(@Nonnull final Map<String, Long> batch) throws IOException {
+        final List<ByteBuffer> datagrams = new ArrayList<>();
+        ByteBuffer datagram = null;
+        for (final Map.Entry<String, Long> invalidation : batch.entrySet()) {
+            // Not longer than MAX_ID_LENGTH, as checked on publish
+            final byte[] id = invalidation.getKey().getBytes(StandardCharsets.UTF_8);
+            if (datagram == null || datagram.remaining() < 2 + id.length + 8) {
+                datagram = ByteBuffer.allocate(MAX_DATAGRAM_LENGTH);
+                datagram.putInt(MAGIC).putShort((short) 0);
+                datagrams.add(datagram);
+            }
+            datagram.putShort((short) id.length).put(id).putLong(invalidation.getValue());
+            datagram.putShort(4, (short) (datagram.getShort(4) + 1));
+        }
+
+        IOException failure = null;
+        for (final ByteBuffer buffer : datagrams) {
+            buffer.flip();
+            for (final InetSocketAddress peer : this.peers) {
+                try {
+                    this.channel.send(buffer.duplicate(), peer);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        // Only once sent, so that local subscribers can't hold the other nodes back
+        for (final Map.Entry<String, Long> invalidation : batch.entrySet()) {
+            this.deliver(invalidation.getKey(), invalidation.getValue());
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    protected void closeTransport() {
+        try {
+            this.channel.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+
+    private void receive() {
+        final ByteBuffer buffer = ByteBuffer.allocate(65536);
+        while (this.channel.isOpen()) {
+            try {
+                buffer.clear();
+                this.channel.receive(buffer);
+                buffer.flip();
+                this.read(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                // Drop the datagram, the bus is best effort
+            }
+        }
+    }
+
+    private void read(final ByteBuffer datagram) {
+        if (datagram.remaining() < HEADER_LENGTH || datagram.getInt() != MAGIC) {
+            return;
+        }
+        final int count = datagram.getShort() & 0xffff;
+        for (int i = 0; i < count; i++) {
+            final int length = datagram.getShort() & 0xffff;
+            final byte[] id = new byte[length];
+            datagram.get(id);
+            this.deliver(new String(id, StandardCharsets.UTF_8), datagram.getLong());
+        }
+    }
+}
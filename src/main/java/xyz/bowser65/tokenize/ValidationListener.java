@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives timings and outcomes of token validations, to feed monitoring. Set with
+ * {@link Tokenize.Builder#listener(ValidationListener)}; {@link ValidationMetrics} is a ready-made implementation.
+ * <p>
+ * Methods are called on the validating threads, synchronously, so they must be thread-safe and return quickly. When
+ * no listener is set, validation doesn't read the clock nor call anything.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public interface ValidationListener {
+    /**
+     * Listener ignoring everything, the default.
+     */
+    ValidationListener NOOP = new ValidationListener() {
+    };
+
+    /**
+     * Called when a phase of a validation completes.
+     *
+     * @param phase The phase.
+     * @param nanos Time it took, in nanoseconds.
+     */
+    default void onPhase(@Nonnull final ValidationPhase phase, final long nanos) {
+    }
+
+    /**
+     * Called once per validated token with its outcome. Validations whose fetch fails report no outcome.
+     *
+     * @param status The outcome.
+     */
+    default void onOutcome(@Nonnull final ValidationResult.Status status) {
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ValidationListener} counting outcomes and recording phase latencies in memory, to be exported to a monitoring
+ * system through {@link #snapshot()}. Counters are {@link LongAdder}s and latencies go to lock-free histograms, so
+ * recording scales with the number of validating threads.
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public class ValidationMetrics implements ValidationListener {
+    private static final ValidationResult.Status[] STATUSES = ValidationResult.Status.values();
+    private static final ValidationPhase[] PHASES = ValidationPhase.values();
+
+    private final LongAdder[] outcomes = new LongAdder[STATUSES.length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[PHASES.length];
+
+    public ValidationMetrics() {
+        for (int i = 0; i < this.outcomes.length; i++) {
+            this.outcomes[i] = new LongAdder();
+        }
+        for (int i = 0; i < this.latencies.length; i++) {
+            this.latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void onPhase(@Nonnull final ValidationPhase phase, final long nanos) {
+        this.latencies[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void onOutcome(@Nonnull final ValidationResult.Status status) {
+        this.outcomes[status.ordinal()].increment();
+    }
+
+    /**
+     * @return The counts and latencies recorded so far. Validations running concurrently may be partially included.
+     */
+    @Nonnull
+    public MetricsSnapshot snapshot() {
+        final long[] counts = new long[STATUSES.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.outcomes[i].sum();
+        }
+        final MetricsSnapshot.Latency[] latencies = new MetricsSnapshot.Latency[PHASES.length];
+        for (int i = 0; i < latencies.length; i++) {
+            final LatencyHistogram histogram = this.latencies[i];
+            latencies[i] = new MetricsSnapshot.Latency(histogram.bucketCounts(), histogram.sum(), histogram.max());
+        }
+        return new MetricsSnapshot(counts, latencies);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Outcome of the validation of a token, for APIs that report rejections without throwing
+ *
+ * @author vinceh121
+ * @since 1.1.0
+ */
+public final class ValidationResult {
+    static final ValidationResult EXPIRED = new ValidationResult(Status.EXPIRED, null);
+    static final ValidationResult REVOKED = new ValidationResult(Status.REVOKED, null);
+    static final ValidationResult UNKNOWN_ACCOUNT = new ValidationResult(Status.UNKNOWN_ACCOUNT, null);
+    static final ValidationResult BAD_SIGNATURE = new ValidationResult(Status.BAD_SIGNATURE, null);
+    static final ValidationResult MALFORMED = new ValidationResult(Status.MALFORMED, null);
+    static final ValidationResult THROTTLED = new ValidationResult(Status.THROTTLED, null);
+
+    @Getter
+    @Nonnull
+    private final Status status;
+    /**
+     * The validated token, only present if the status is {@link Status#VALID}.
+     */
+    @Getter
+    @Nullable
+    private final Token token;
+
+    private ValidationResult(@Nonnull final Status status, @Nullable final Token token) {
+        this.status = status;
+        this.token = token;
+    }
+
+    static ValidationResult valid(@Nonnull final Token token) {
+        return new ValidationResult(Status.VALID, token);
+    }
+
+    /**
+     * @return Whether the token is valid.
+     */
+    public boolean isValid() {
+        return this.status == Status.VALID;
+    }
+
+    @Override
+    public String toString() {
+        return this.status.name();
+    }
+
+    public enum Status {
+        /**
+         * The token is valid.
+         */
+        VALID,
+        /**
+         * The signature is valid, but the token is past its expiry time or older than the max age.
+         */
+        EXPIRED,
+        /**
+         * The signature is valid, but the token was generated before {@link IAccount#tokensValidSince()}, or was
+         * revoked individually with {@link Tokenize#revokeToken(CharSequence)}.
+         */
+        REVOKED,
+        /**
+         * The signature is valid, but there is no account with the ID it contains.
+         */
+        UNKNOWN_ACCOUNT,
+        /**
+         * The token signature is invalid.
+         */
+        BAD_SIGNATURE,
+        /**
+         * The token isn't structurally valid, or its time is before the Tokenize epoch or in the future.
+         */
+        MALFORMED,
+        /**
+         * The token wasn't checked, as its client sent too many invalid tokens recently.
+         *
+         * @see TokenThrottle
+         */
+        THROTTLED
+    }
+}
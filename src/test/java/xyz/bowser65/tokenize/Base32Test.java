@@ -30,6 +30,11 @@ package xyz.bowser65.tokenize;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
 public class Base32Test {
     @Test
     public void testDecode() {
@@ -38,4 +43,85 @@ public class Base32Test {
         final byte[] decoded = Base32.decode(base32);
         Assertions.assertEquals(expected, new String(decoded));
     }
+
+    @Test
+    public void testVectors() {
+        final String[][] vectors = {
+                {"", ""}, {"f", "MY"}, {"fo", "MZXQ"}, {"foo", "MZXW6"},
+                {"foob", "MZXW6YQ"}, {"fooba", "MZXW6YTB"}, {"foobar", "MZXW6YTBOI"}
+        };
+        for (final String[] vector : vectors) {
+            final byte[] bytes = vector[0].getBytes(StandardCharsets.US_ASCII);
+            Assertions.assertEquals(vector[1], Base32.encode(bytes));
+            Assertions.assertArrayEquals(bytes, Base32.decode(vector[1]));
+            Assertions.assertArrayEquals(bytes, Base32.decode(vector[1].toLowerCase()));
+        }
+        Assertions.assertArrayEquals("foobar".getBytes(StandardCharsets.US_ASCII), Base32.decode("MZXW6YTBOI======"));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(0x5eed);
+        for (int i = 0; i < 2000; i++) {
+            final byte[] bytes = new byte[random.nextInt(64)];
+            random.nextBytes(bytes);
+            final String encoded = Base32.encode(bytes);
+            Assertions.assertEquals(Base32.encodedLength(bytes.length), encoded.length());
+            Assertions.assertEquals(bytes.length, Base32.decodedLength(encoded.length()));
+            Assertions.assertArrayEquals(bytes, Base32.decode(encoded));
+            Assertions.assertArrayEquals(bytes, Base32.decode(encoded.toCharArray(), 0, encoded.length()));
+            Assertions.assertArrayEquals(bytes, Base32.decode(ByteBuffer.wrap(encoded.getBytes(StandardCharsets.US_ASCII))));
+            Assertions.assertEquals(encoded, Base32.encode(ByteBuffer.wrap(bytes)));
+        }
+    }
+
+    @Test
+    public void testStreamingRoundTrip() {
+        final Random random = new Random(0xc0ffee);
+        for (int i = 0; i < 500; i++) {
+            final byte[] bytes = new byte[random.nextInt(256)];
+            random.nextBytes(bytes);
+
+            final Base32.Encoder encoder = new Base32.Encoder();
+            final char[] chars = new char[Base32.encodedLength(bytes.length) + 1];
+            int c = 0;
+            for (int off = 0; off < bytes.length; ) {
+                final int len = Math.min(random.nextInt(9), bytes.length - off);
+                c += encoder.update(bytes, off, len, chars, c);
+                off += len;
+            }
+            c += encoder.finish(chars, c);
+            final String encoded = new String(chars, 0, c);
+            Assertions.assertEquals(Base32.encode(bytes), encoded);
+
+            final Base32.Decoder decoder = new Base32.Decoder();
+            final byte[] decoded = new byte[bytes.length + 1];
+            int d = 0;
+            for (int off = 0; off < c; ) {
+                final int len = Math.min(random.nextInt(11), c - off);
+                d += decoder.update(chars, off, len, decoded, d);
+                off += len;
+            }
+            decoder.finish();
+            Assertions.assertEquals(bytes.length, d);
+            Assertions.assertArrayEquals(bytes, Arrays.copyOf(decoded, d));
+        }
+    }
+
+    @Test
+    public void testRejectsMalformed() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("JVSW65Z1"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("JVSW65Z\u00e9"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("JVSW 5ZB"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("JVS"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("J"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("MZ=XW6"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode(ByteBuffer.wrap(new byte[]{'M', 'Z', (byte) 0xcd, 'Q'})));
+
+        final Base32.Decoder decoder = new Base32.Decoder();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decoder.update("MZ=X".toCharArray(), 0, 4, new byte[4], 0));
+        final Base32.Decoder truncated = new Base32.Decoder();
+        truncated.update("MZX".toCharArray(), 0, 3, new byte[4], 0);
+        Assertions.assertThrows(IllegalArgumentException.class, truncated::finish);
+    }
 }
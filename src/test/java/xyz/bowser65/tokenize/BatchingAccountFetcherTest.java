@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+
+public class BatchingAccountFetcherTest {
+    @Test
+    public void testBatchesLookups() {
+        final List<Set<String>> batches = new ArrayList<>();
+        try (BatchingAccountFetcher fetcher = new BatchingAccountFetcher(ids -> {
+            synchronized (batches) {
+                batches.add(ids);
+            }
+            final Map<String, IAccount> accounts = new HashMap<>();
+            ids.stream().filter(id -> !id.equals("unknown")).forEach(id -> accounts.put(id, TestAccounts.account(id)));
+            return CompletableFuture.completedFuture(accounts);
+        }, Duration.ofMillis(50), 100, 1000, Duration.ofSeconds(5))) {
+            final CompletableFuture<IAccount> a = fetcher.fetchAccount("a").toCompletableFuture();
+            final CompletableFuture<IAccount> b = fetcher.fetchAccount("b").toCompletableFuture();
+            final CompletableFuture<IAccount> a2 = fetcher.fetchAccount("a").toCompletableFuture();
+            final CompletableFuture<IAccount> unknown = fetcher.fetchAccount("unknown").toCompletableFuture();
+
+            Assertions.assertEquals("a", a.join().getTokenId());
+            Assertions.assertEquals("b", b.join().getTokenId());
+            Assertions.assertEquals("a", a2.join().getTokenId());
+            Assertions.assertNull(unknown.join());
+            Assertions.assertEquals(1, batches.size());
+            Assertions.assertEquals(3, batches.get(0).size());
+        }
+    }
+
+    @Test
+    public void testMaxBatchSize() {
+        final List<Set<String>> batches = new ArrayList<>();
+        try (BatchingAccountFetcher fetcher = new BatchingAccountFetcher(ids -> {
+            synchronized (batches) {
+                batches.add(ids);
+            }
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }, Duration.ofSeconds(10), 2, 1000, Duration.ofSeconds(20))) {
+            final CompletableFuture<IAccount> a = fetcher.fetchAccount("a").toCompletableFuture();
+            final CompletableFuture<IAccount> b = fetcher.fetchAccount("b").toCompletableFuture();
+            Assertions.assertTrue(a.isDone());
+            Assertions.assertTrue(b.isDone());
+            Assertions.assertEquals(1, batches.size());
+        }
+    }
+
+    @Test
+    public void testTimeoutAndBackpressure() {
+        try (BatchingAccountFetcher fetcher = new BatchingAccountFetcher(ids -> new CompletableFuture<>(),
+                Duration.ofMillis(1), 100, 1, Duration.ofMillis(50))) {
+            final CompletableFuture<IAccount> slow = fetcher.fetchAccount("a").toCompletableFuture();
+            final CompletableFuture<IAccount> rejected = fetcher.fetchAccount("b").toCompletableFuture();
+
+            final CompletionException rejection = Assertions.assertThrows(CompletionException.class, rejected::join);
+            Assertions.assertTrue(rejection.getCause() instanceof RejectedExecutionException);
+            final CompletionException timeout = Assertions.assertThrows(CompletionException.class, slow::join);
+            Assertions.assertTrue(timeout.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void testBackendFailure() {
+        try (BatchingAccountFetcher fetcher = new BatchingAccountFetcher(ids -> {
+            final CompletableFuture<Map<String, IAccount>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("database down"));
+            return failed;
+        }, Duration.ofMillis(1), 100, 100, Duration.ofSeconds(5))) {
+            final CompletionException error = Assertions.assertThrows(CompletionException.class,
+                    () -> fetcher.fetchAccount("a").toCompletableFuture().join());
+            Assertions.assertTrue(error.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testTimersReleased() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        try (BatchingAccountFetcher fetcher = new BatchingAccountFetcher(ids -> CompletableFuture.completedFuture(new HashMap<>()),
+                Duration.ofSeconds(10), 2, 1000, Duration.ofSeconds(20), scheduler)) {
+            fetcher.fetchAccount("a");
+            Assertions.assertEquals(2, scheduler.getQueue().size());
+            Assertions.assertTrue(fetcher.fetchAccount("b").toCompletableFuture().isDone());
+            // Sent early and answered: neither the window nor the timeout hold on to the batch
+            Assertions.assertEquals(0, scheduler.getQueue().size());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectingScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.shutdown();
+        try (BatchingAccountFetcher fetcher = new BatchingAccountFetcher(ids -> CompletableFuture.completedFuture(new HashMap<>()),
+                Duration.ofMillis(1), 100, 100, Duration.ofSeconds(5), scheduler)) {
+            for (int i = 0; i < 2; i++) {
+                final CompletionException error = Assertions.assertThrows(CompletionException.class,
+                        () -> fetcher.fetchAccount("a").toCompletableFuture().join());
+                Assertions.assertTrue(error.getCause() instanceof RejectedExecutionException);
+            }
+            Assertions.assertEquals(0, fetcher.getPendingCount());
+        }
+    }
+}
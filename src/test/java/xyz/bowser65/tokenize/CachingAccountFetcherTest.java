@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachingAccountFetcherTest {
+    @Test
+    public void testSingleFlight() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CachingAccountFetcher fetcher = new CachingAccountFetcher(id -> {
+            calls.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return TestAccounts.ACCOUNT;
+        }, 100, Duration.ofMinutes(1), Duration.ofSeconds(1));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final Future<?>[] futures = new Future[8];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> fetcher.fetchAccount("42"));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (final Future<?> future : futures) {
+                Assertions.assertSame(TestAccounts.ACCOUNT, future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertSame(TestAccounts.ACCOUNT, fetcher.fetchAccount("42"));
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testNegativeCaching() {
+        final AtomicInteger calls = new AtomicInteger();
+        final CachingAccountFetcher fetcher = new CachingAccountFetcher(id -> {
+            calls.incrementAndGet();
+            return null;
+        }, 100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+        Assertions.assertNull(fetcher.fetchAccount("forged"));
+        Assertions.assertNull(fetcher.fetchAccount("forged"));
+        Assertions.assertEquals(1, calls.get());
+
+        fetcher.invalidate("forged");
+        Assertions.assertNull(fetcher.fetchAccount("forged"));
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testAsyncSingleFlight() {
+        final AtomicInteger calls = new AtomicInteger();
+        final CompletableFuture<IAccount> backend = new CompletableFuture<>();
+        final CachingAsyncAccountFetcher fetcher = new CachingAsyncAccountFetcher(id -> {
+            calls.incrementAndGet();
+            return backend;
+        }, 100, Duration.ofMinutes(1), Duration.ofSeconds(1));
+
+        final CompletableFuture<IAccount> first = fetcher.fetchAccount("42").toCompletableFuture();
+        final CompletableFuture<IAccount> second = fetcher.fetchAccount("42").toCompletableFuture();
+        Assertions.assertFalse(first.isDone());
+        backend.complete(TestAccounts.ACCOUNT);
+        Assertions.assertSame(TestAccounts.ACCOUNT, first.join());
+        Assertions.assertSame(TestAccounts.ACCOUNT, second.join());
+        Assertions.assertSame(TestAccounts.ACCOUNT, fetcher.fetchAccount("42").toCompletableFuture().join());
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testAsyncFailureIsNotCached() {
+        final AtomicInteger calls = new AtomicInteger();
+        final CachingAsyncAccountFetcher fetcher = new CachingAsyncAccountFetcher(id -> {
+            calls.incrementAndGet();
+            final CompletableFuture<IAccount> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("database down"));
+            return failed;
+        }, 100, Duration.ofMinutes(1), Duration.ofSeconds(1));
+
+        Assertions.assertTrue(fetcher.fetchAccount("42").toCompletableFuture().isCompletedExceptionally());
+        Assertions.assertTrue(fetcher.fetchAccount("42").toCompletableFuture().isCompletedExceptionally());
+        Assertions.assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.security.SignatureException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachingTokenValidatorTest {
+    private static final Tokenize TOKENIZE = new Tokenize(TestAccounts.SECRET);
+
+    @Test
+    public void testCachesValidTokens() throws SignatureException {
+        final IAccount account = TestAccounts.account("42", 0);
+        final AtomicInteger fetches = new AtomicInteger();
+        final AccountFetcher fetcher = id -> {
+            fetches.incrementAndGet();
+            return account;
+        };
+        final CachingTokenValidator validator = new CachingTokenValidator(TOKENIZE, 100, Duration.ofMinutes(1));
+        final String token = TOKENIZE.generateToken(account).toString();
+
+        final Token first = validator.validateToken(token, fetcher);
+        Assertions.assertNotNull(first);
+        final long genTime = first.getGenTime();
+        final Token second = validator.validateToken(token, fetcher);
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals(token, second.toString());
+        // Callers get their own copy, that they can modify without affecting the cache
+        first.setPrefix("Changed");
+        second.regenerate();
+        Assertions.assertEquals(token, validator.validateToken(token, fetcher).toString());
+        Assertions.assertNull(validator.validateToken(token, fetcher).getPrefix());
+        Assertions.assertEquals(1, fetches.get());
+        Assertions.assertEquals(3, validator.getHitCount());
+        Assertions.assertEquals(1, validator.getMissCount());
+
+        validator.invalidateAccount("42", genTime - 1);
+        Assertions.assertEquals(1, validator.size());
+        validator.invalidateAccount("42", genTime);
+        Assertions.assertEquals(0, validator.size());
+        Assertions.assertNotNull(validator.validateToken(token, fetcher));
+        Assertions.assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testSizeBound() throws SignatureException {
+        final CachingTokenValidator validator = new CachingTokenValidator(TOKENIZE, 1, Duration.ofMinutes(1));
+        for (int i = 0; i < 10; i++) {
+            final IAccount account = TestAccounts.account(String.valueOf(i), 0);
+            validator.validateToken(TOKENIZE.generateToken(account).toString(), (AccountFetcher) id -> account);
+        }
+        Assertions.assertEquals(1, validator.size());
+        Assertions.assertEquals(9, validator.getEvictionCount());
+    }
+
+    @Test
+    public void testDoesNotCacheRejections() throws SignatureException {
+        final CachingTokenValidator validator = new CachingTokenValidator(TOKENIZE, 100, Duration.ofMinutes(1));
+        final String token = TOKENIZE.generateToken(TestAccounts.account("42", 0)).toString();
+        Assertions.assertNull(validator.validateToken(token, (AccountFetcher) id -> null));
+        Assertions.assertEquals(0, validator.size());
+    }
+
+    @Test
+    public void testLifetimeCappedByExpiry() throws SignatureException, InterruptedException {
+        final long genTime = 1000;
+        final Tokenize fixed = Tokenize.builder()
+                .secret(TestAccounts.SECRET)
+                .maxAge(Duration.ofSeconds(10))
+                .clock(Clock.fixed(Instant.ofEpochMilli(Tokenize.TOKENIZE_EPOCH + genTime * 1000 + 250), ZoneOffset.UTC))
+                .build();
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(10_750), fixed.nanosUntilExpiry(genTime, Token.NO_EXPIRY));
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(4_750), fixed.nanosUntilExpiry(genTime, genTime + 5));
+        Assertions.assertEquals(0, fixed.nanosUntilExpiry(genTime - 20, Token.NO_EXPIRY));
+        Assertions.assertEquals(Long.MAX_VALUE, TOKENIZE.nanosUntilExpiry(genTime, Token.NO_EXPIRY));
+
+        // Start right after a second boundary, so the token stays valid for most of a second
+        while (System.currentTimeMillis() % 1000 > 100) {
+            Thread.sleep(10);
+        }
+        final IAccount account = TestAccounts.account("42", -1);
+        final long now = TOKENIZE.tokenTime();
+        final String token = new Token(TOKENIZE, account, null, now, now + 1).toString();
+        final CachingTokenValidator validator = new CachingTokenValidator(TOKENIZE, 100, Duration.ofMinutes(1));
+        Assertions.assertNotNull(validator.validateToken(token, id -> account));
+        Assertions.assertNotNull(validator.validateToken(token, id -> account));
+        Assertions.assertEquals(1, validator.getHitCount());
+
+        while (TOKENIZE.tokenTime() < now + 1) {
+            Thread.sleep(20);
+        }
+        Assertions.assertNull(validator.validateToken(token, id -> account));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+
+public class CompactFormatTest {
+    private static final IAccount ACCOUNT = TestAccounts.account("1234567890");
+
+    private static final AccountFetcher FETCHER = id -> ACCOUNT.getTokenId().equals(id) ? ACCOUNT : null;
+
+    @Test
+    public void testRoundTrip() throws SignatureException {
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).format(TokenFormat.COMPACT).build();
+        final Token token = tokenize.generateToken(ACCOUNT, "Bot");
+        final String raw = token.toString();
+        Assertions.assertTrue(raw.matches("[A-Za-z0-9_-]+"), raw);
+        Assertions.assertTrue(raw.length() < new Tokenize(TestAccounts.SECRET).generateToken(ACCOUNT, "Bot").toString().length());
+
+        final Token validated = tokenize.validateToken(raw, FETCHER);
+        Assertions.assertNotNull(validated);
+        Assertions.assertEquals("Bot", validated.getPrefix());
+        Assertions.assertEquals(token.getGenTime(), validated.getGenTime());
+        Assertions.assertNull(tokenize.validateToken(tokenize.generateToken(ACCOUNT).toString(), FETCHER).getPrefix());
+    }
+
+    @Test
+    public void testBothFormatsLive() throws SignatureException {
+        final Tokenize text = new Tokenize(TestAccounts.SECRET);
+        final Tokenize compact = Tokenize.builder().secret(TestAccounts.SECRET).format(TokenFormat.COMPACT).build();
+        Assertions.assertNotNull(compact.validateToken(text.generateToken(ACCOUNT).toString(), FETCHER));
+        Assertions.assertNotNull(text.validateToken(compact.generateToken(ACCOUNT).toString(), FETCHER));
+    }
+
+    @Test
+    public void testKeyed() throws SignatureException {
+        final Keyring keyring = new Keyring("k1", TestAccounts.SECRET);
+        final Tokenize tokenize = Tokenize.builder().keyring(keyring).format(TokenFormat.COMPACT).build();
+        final String first = tokenize.generateToken(ACCOUNT).toString();
+        keyring.addKey("k2", "another key".getBytes(StandardCharsets.UTF_8));
+        keyring.activate("k2");
+        Assertions.assertNotNull(tokenize.validateToken(first, FETCHER));
+        Assertions.assertNotNull(tokenize.validateToken(tokenize.generateToken(ACCOUNT).toString(), FETCHER));
+        keyring.removeKey("k1");
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(first, FETCHER));
+    }
+
+    @Test
+    public void testTamperedAndTruncated() {
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).format(TokenFormat.COMPACT).build();
+        final String raw = tokenize.generateToken(ACCOUNT).toString();
+        // Alters a character of the MAC, avoiding the last one whose trailing bits must stay zero
+        final int i = raw.length() - 3;
+        final String forged = raw.substring(0, i) + (raw.charAt(i) == 'A' ? 'B' : 'A') + raw.substring(i + 1);
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(forged, FETCHER));
+
+        final Tokenize longer = Tokenize.builder().secret(TestAccounts.SECRET).format(TokenFormat.COMPACT).compactMacLength(32).build();
+        Assertions.assertThrows(SignatureException.class, () -> longer.validateToken(raw, FETCHER));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenize.validateToken("AwA", FETCHER));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenize.validateToken("not*base64", FETCHER));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.security.SignatureException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExpiryTest {
+    @Test
+    public void testEmbeddedExpiry() throws SignatureException {
+        final MutableClock clock = new MutableClock();
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).clock(clock).build();
+        final AtomicInteger fetches = new AtomicInteger();
+        final AccountFetcher fetcher = id -> {
+            fetches.incrementAndGet();
+            return TestAccounts.ACCOUNT;
+        };
+
+        final Token token = tokenize.generateToken(TestAccounts.ACCOUNT, "Bot", Duration.ofMinutes(5));
+        Assertions.assertTrue(token.hasExpiry());
+        Assertions.assertEquals(token.getGenTime() + 300, token.getExpiresAt());
+        final String raw = token.toString();
+
+        final Token validated = tokenize.validateToken(raw, fetcher);
+        Assertions.assertNotNull(validated);
+        Assertions.assertEquals(token.getExpiresAt(), validated.getExpiresAt());
+        Assertions.assertEquals("Bot", validated.getPrefix());
+        Assertions.assertEquals(1, fetches.get());
+
+        clock.advance(Duration.ofMinutes(5));
+        Assertions.assertTrue(token.isExpired());
+        Assertions.assertNull(tokenize.validateToken(raw, fetcher));
+        Assertions.assertEquals(1, fetches.get());
+        Assertions.assertEquals(ValidationResult.Status.EXPIRED,
+                tokenize.validateTokens(Collections.singletonList(raw), ids -> Collections.emptyMap()).get(0).getStatus());
+
+        token.regenerate();
+        Assertions.assertFalse(token.isExpired());
+        Assertions.assertEquals(token.getGenTime() + 300, token.getExpiresAt());
+    }
+
+    @Test
+    public void testMaxAge() throws SignatureException {
+        final MutableClock clock = new MutableClock();
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).clock(clock).maxAge(Duration.ofHours(1)).build();
+        final AtomicInteger fetches = new AtomicInteger();
+        final AccountFetcher fetcher = id -> {
+            fetches.incrementAndGet();
+            return TestAccounts.ACCOUNT;
+        };
+
+        final Token token = tokenize.generateToken(TestAccounts.ACCOUNT);
+        final String raw = token.toString();
+        Assertions.assertFalse(token.hasExpiry());
+        Assertions.assertNotNull(tokenize.validateToken(raw, fetcher));
+
+        clock.advance(Duration.ofMinutes(61));
+        Assertions.assertEquals(61 * 60, token.getAge());
+        Assertions.assertNull(tokenize.validateToken(raw, fetcher));
+        Assertions.assertEquals(1, fetches.get());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant = Instant.now();
+
+        private void advance(final Duration duration) {
+            this.instant = this.instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return this.instant;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InvalidationBusTest {
+    @Test
+    public void testCoalescing() {
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        final Map<String, Long> since = new ConcurrentHashMap<>();
+        final InMemoryInvalidationBus bus = new InMemoryInvalidationBus(Duration.ofHours(1), 100);
+        bus.subscribe((id, time) -> {
+            received.add(id);
+            since.put(id, time);
+        });
+
+        bus.publish("42", 10);
+        bus.publish("42", 30);
+        bus.publish("42", 20);
+        bus.publish("43", 5);
+        Assertions.assertTrue(received.isEmpty());
+
+        bus.close();
+        Assertions.assertEquals(2, received.size());
+        Assertions.assertEquals(30L, since.get("42"));
+        Assertions.assertEquals(5L, since.get("43"));
+        Assertions.assertThrows(IllegalStateException.class, () -> bus.publish("42", 40));
+    }
+
+    @Test
+    public void testFullBatch() {
+        final AtomicInteger received = new AtomicInteger();
+        try (InMemoryInvalidationBus bus = new InMemoryInvalidationBus(Duration.ofHours(1), 2)) {
+            bus.subscribe((id, time) -> received.incrementAndGet());
+            bus.publish("1", 0);
+            Assertions.assertEquals(0, received.get());
+            bus.publish("2", 0);
+            Assertions.assertEquals(2, received.get());
+        }
+    }
+
+    @Test
+    public void testThrowingSubscriber() throws Exception {
+        final AtomicInteger received = new AtomicInteger();
+        try (InMemoryInvalidationBus bus = new InMemoryInvalidationBus(Duration.ofHours(1), 2)) {
+            bus.subscribe((id, time) -> {
+                throw new IllegalStateException("Broken subscriber");
+            });
+            bus.subscribe((id, time) -> received.incrementAndGet());
+            bus.publish("1", 0);
+            bus.publish("2", 0);
+            Assertions.assertEquals(2, received.get());
+            Assertions.assertEquals(2, bus.getSubscriberFailureCount());
+            Assertions.assertEquals(0, bus.getFailureCount());
+        }
+
+        final InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        try (UdpInvalidationBus sender = new UdpInvalidationBus(loopback, Duration.ofHours(1), 1);
+             UdpInvalidationBus receiver = new UdpInvalidationBus(loopback, Duration.ofHours(1), 1)) {
+            sender.addPeer(receiver.getLocalAddress());
+            sender.subscribe((id, time) -> {
+                throw new IllegalStateException("Broken subscriber");
+            });
+            receiver.subscribe((id, time) -> delivered.countDown());
+            sender.publish("42", 0);
+            Assertions.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, sender.getSubscriberFailureCount());
+        }
+    }
+
+    @Test
+    public void testRejectingScheduler() {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.shutdown();
+        final Map<String, Long> received = new ConcurrentHashMap<>();
+        try (InMemoryInvalidationBus bus = new InMemoryInvalidationBus(Duration.ofHours(1), 100, scheduler)) {
+            bus.subscribe(received::put);
+            bus.publish("42", 10);
+            bus.publish("43", 20);
+            Assertions.assertEquals(10L, received.get("42"));
+            Assertions.assertEquals(20L, received.get("43"));
+        }
+    }
+
+    @Test
+    public void testUdpOversizedId() throws Exception {
+        final InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try (UdpInvalidationBus bus = new UdpInvalidationBus(loopback, Duration.ofHours(1), 100)) {
+            final char[] id = new char[UdpInvalidationBus.MAX_DATAGRAM_LENGTH];
+            Arrays.fill(id, 'a');
+            Assertions.assertThrows(IllegalArgumentException.class, () -> bus.publish(new String(id), 0));
+        }
+    }
+
+    @Test
+    public void testCacheInvalidation() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CachingAccountFetcher fetcher = new CachingAccountFetcher(id -> {
+            calls.incrementAndGet();
+            return null;
+        }, 100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        final CountDownLatch delivered = new CountDownLatch(1);
+
+        try (InMemoryInvalidationBus bus = new InMemoryInvalidationBus(Duration.ofMillis(10), 100)) {
+            bus.subscribe(fetcher);
+            bus.subscribe((id, time) -> delivered.countDown());
+
+            fetcher.fetchAccount("42");
+            fetcher.fetchAccount("42");
+            Assertions.assertEquals(1, calls.get());
+
+            bus.publish("42", System.currentTimeMillis());
+            Assertions.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            fetcher.fetchAccount("42");
+            Assertions.assertEquals(2, calls.get());
+        }
+    }
+
+    @Test
+    public void testUdpDelivery() throws Exception {
+        final InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        final Map<String, Long> received = new ConcurrentHashMap<>();
+        final CountDownLatch delivered = new CountDownLatch(300);
+
+        try (UdpInvalidationBus sender = new UdpInvalidationBus(loopback, Duration.ofMillis(10), 1000);
+             UdpInvalidationBus receiver = new UdpInvalidationBus(loopback, Duration.ofMillis(10), 1000)) {
+            sender.addPeer(receiver.getLocalAddress());
+            receiver.subscribe((id, time) -> {
+                received.put(id, time);
+                delivered.countDown();
+            });
+
+            // Enough accounts to span several datagrams
+            for (int i = 0; i < 300; i++) {
+                sender.publish("account-" + i, i);
+            }
+            Assertions.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(300, received.size());
+            Assertions.assertEquals(299L, received.get("account-299"));
+            Assertions.assertEquals(0, sender.getFailureCount());
+        }
+    }
+}
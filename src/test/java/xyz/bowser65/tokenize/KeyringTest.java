@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+
+public class KeyringTest {
+    private static final AccountFetcher FETCHER = id -> TestAccounts.ACCOUNT;
+
+    @Test
+    public void testRotation() throws SignatureException {
+        final Keyring keyring = new Keyring("k1", "first secret".getBytes(StandardCharsets.UTF_8));
+        final Tokenize tokenize = new Tokenize(keyring);
+        final String first = tokenize.generateToken(TestAccounts.ACCOUNT).toString();
+        Assertions.assertTrue(first.contains(".k1~"));
+
+        keyring.addKey("k2", "second secret".getBytes(StandardCharsets.UTF_8));
+        keyring.activate("k2");
+        final String second = tokenize.generateToken(TestAccounts.ACCOUNT).toString();
+        Assertions.assertTrue(second.contains(".k2~"));
+        Assertions.assertNotNull(tokenize.validateToken(first, FETCHER));
+        Assertions.assertNotNull(tokenize.validateToken(second, FETCHER));
+
+        keyring.removeKey("k1");
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(first, FETCHER));
+        Assertions.assertNotNull(tokenize.validateToken(second, FETCHER));
+        Assertions.assertThrows(IllegalStateException.class, () -> keyring.removeKey("k2"));
+    }
+
+    @Test
+    public void testKeyIdSubstitution() {
+        final Keyring keyring = new Keyring("k1", "first secret".getBytes(StandardCharsets.UTF_8));
+        keyring.addKey("k2", "second secret".getBytes(StandardCharsets.UTF_8));
+        final Tokenize tokenize = new Tokenize(keyring);
+        final String token = tokenize.generateToken(TestAccounts.ACCOUNT).toString().replace(".k1~", ".k2~");
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(token, FETCHER));
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(token.replace(".k2~", ".k3~"), FETCHER));
+    }
+
+    @Test
+    public void testMigration() throws SignatureException {
+        final byte[] secret = TestAccounts.SECRET;
+        final String unkeyed = new Tokenize(secret).generateToken(TestAccounts.ACCOUNT).toString();
+        final Keyring keyring = new Keyring("k1", "first secret".getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertThrows(SignatureException.class, () -> new Tokenize(keyring).validateToken(unkeyed, FETCHER));
+
+        final Tokenize migrating = new Tokenize(secret, keyring);
+        Assertions.assertNotNull(migrating.validateToken(unkeyed, FETCHER));
+        final String keyed = migrating.generateToken(TestAccounts.ACCOUNT, "Bot").toString();
+        Assertions.assertTrue(keyed.contains(".k1~"));
+        Assertions.assertNotNull(migrating.validateToken(keyed, FETCHER));
+        Assertions.assertThrows(SignatureException.class, () -> new Tokenize(secret).validateToken(keyed, FETCHER));
+    }
+
+    @Test
+    public void testInvalidKeyId() {
+        final byte[] secret = "secret".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Keyring("", secret));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Keyring("too-long-id", secret));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Keyring("k.1", secret));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.security.SignatureException;
+
+public class LongIdAccountTest {
+    @Test
+    public void testRoundTrip() throws SignatureException {
+        for (final TokenFormat format : TokenFormat.values()) {
+            final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).format(format).build();
+            for (final long id : new long[] { 0, 1, -1, 7, 1234567890123456789L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+                final LongIdAccount account = TestAccounts.longIdAccount(id, -1);
+                final String token = tokenize.generateToken(account, "Bot").toString();
+
+                final Token validated = tokenize.validateToken(token, new LongAccountFetcher() {
+                    @Override
+                    public IAccount fetchAccount(final long fetched) {
+                        return fetched == id ? account : null;
+                    }
+
+                    @Override
+                    public IAccount fetchAccount(final String fetched) {
+                        throw new AssertionError("Fetched by string: " + fetched);
+                    }
+                });
+                Assertions.assertSame(account, validated.getAccount(), format + " " + id);
+                Assertions.assertEquals("Bot", validated.getPrefix());
+
+                // String fetchers see the decimal form
+                Assertions.assertSame(account, tokenize.validateToken(token, (AccountFetcher) fetched -> Long.toString(id).equals(fetched) ? account : null).getAccount());
+            }
+        }
+    }
+
+    @Test
+    public void testFormats() throws SignatureException {
+        final Tokenize text = new Tokenize(TestAccounts.SECRET);
+        final long time = text.tokenTime();
+        // Text tokens are the same as for the decimal string ID, so that String fetchers keep working
+        Assertions.assertEquals(new Token(text, TestAccounts.account("1234567890123456789", -1), null, time).toString(),
+                new Token(text, TestAccounts.longIdAccount(1234567890123456789L, -1), null, time).toString());
+
+        final Tokenize compact = Tokenize.builder().secret(TestAccounts.SECRET).format(TokenFormat.COMPACT).build();
+        Assertions.assertTrue(new Token(compact, TestAccounts.longIdAccount(1234567890123456789L, -1), null, time).toString().length()
+                < new Token(compact, TestAccounts.account("1234567890123456789", -1), null, time).toString().length());
+
+        // IDs that aren't the canonical form of a long don't reach the long fetcher
+        final LongAccountFetcher fetcher = id -> TestAccounts.longIdAccount(id, -1);
+        for (final String id : new String[] { "007", "-0", "+7", "9223372036854775808", "abc" }) {
+            for (final Tokenize tokenize : new Tokenize[] { text, compact }) {
+                Assertions.assertNull(tokenize.validateToken(tokenize.generateToken(TestAccounts.account(id, -1)).toString(), fetcher), id);
+            }
+        }
+        Assertions.assertNotNull(text.validateToken(text.generateToken(TestAccounts.account("-42", -1)).toString(), fetcher));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OffloadingAccountFetcherTest {
+    @Test
+    public void testValidation() throws Exception {
+        final Tokenize tokenize = new Tokenize(TestAccounts.SECRET);
+        final String token = tokenize.generateToken(TestAccounts.ACCOUNT).toString();
+        final Thread caller = Thread.currentThread();
+        try (OffloadingAccountFetcher fetcher = new OffloadingAccountFetcher(id -> {
+            Assertions.assertNotSame(caller, Thread.currentThread());
+            return "42".equals(id) ? TestAccounts.ACCOUNT : null;
+        }, 16, Duration.ofSeconds(5))) {
+            Assertions.assertEquals(OffloadingAccountFetcher.newVirtualThreadExecutor() != null, fetcher.isVirtual());
+            final Token validated = tokenize.validateToken(token, (AsyncAccountFetcher) fetcher).toCompletableFuture().get(5, TimeUnit.SECONDS);
+            Assertions.assertSame(TestAccounts.ACCOUNT, validated.getAccount());
+            Assertions.assertNull(fetcher.fetchAccount("43").toCompletableFuture().get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testBulkhead() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        try (OffloadingAccountFetcher fetcher = new OffloadingAccountFetcher(id -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return TestAccounts.ACCOUNT;
+        }, 2, Duration.ofSeconds(5))) {
+            final CompletableFuture<IAccount> first = fetcher.fetchAccount("1").toCompletableFuture();
+            final CompletableFuture<IAccount> second = fetcher.fetchAccount("2").toCompletableFuture();
+            final ExecutionException rejected = Assertions.assertThrows(ExecutionException.class,
+                    () -> fetcher.fetchAccount("3").toCompletableFuture().get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+            Assertions.assertEquals(2, fetcher.getRunningCount());
+
+            release.countDown();
+            Assertions.assertSame(TestAccounts.ACCOUNT, first.get(5, TimeUnit.SECONDS));
+            Assertions.assertSame(TestAccounts.ACCOUNT, second.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final OffloadingAccountFetcher fetcher = new OffloadingAccountFetcher(id -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return TestAccounts.ACCOUNT;
+        }, 1, Duration.ofMillis(50));
+
+        final ExecutionException timedOut = Assertions.assertThrows(ExecutionException.class,
+                () -> fetcher.fetchAccount("1").toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(timedOut.getCause() instanceof TimeoutException);
+        // The blocking call still holds its permit
+        Assertions.assertEquals(1, fetcher.getRunningCount());
+        release.countDown();
+
+        fetcher.close();
+        final ExecutionException closed = Assertions.assertThrows(ExecutionException.class,
+                () -> fetcher.fetchAccount("1").toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(closed.getCause() instanceof RejectedExecutionException);
+    }
+
+    @Test
+    public void testRejectingScheduler() throws Exception {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.shutdown();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final OffloadingAccountFetcher fetcher = new OffloadingAccountFetcher(id -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return TestAccounts.ACCOUNT;
+            }, 1, Duration.ofSeconds(5), executor, scheduler);
+            final ExecutionException rejected = Assertions.assertThrows(ExecutionException.class,
+                    () -> fetcher.fetchAccount("1").toCompletableFuture().get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallerCannotCompleteLookup() {
+        final List<Runnable> queued = new ArrayList<>();
+        final AtomicInteger calls = new AtomicInteger();
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final OffloadingAccountFetcher fetcher = new OffloadingAccountFetcher(id -> {
+                calls.incrementAndGet();
+                return TestAccounts.ACCOUNT;
+            }, 1, Duration.ofSeconds(5), queued::add, scheduler);
+            fetcher.fetchAccount("1").toCompletableFuture().complete(null);
+            queued.forEach(Runnable::run);
+            Assertions.assertEquals(1, calls.get());
+            Assertions.assertEquals(0, fetcher.getRunningCount());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+public class OtpVerifierTest {
+    private static final String SHA1_SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+
+    @Test
+    public void testHotpVectors() {
+        final OtpVerifier verifier = OtpVerifier.builder().build();
+        final OtpKey key = verifier.key(SHA1_SECRET);
+        final int[] expected = {755224, 287082, 359152, 969429, 338314, 254676, 287922, 162583, 399871, 520489};
+        for (int i = 0; i < expected.length; i++) {
+            Assertions.assertEquals(expected[i], verifier.hotp(key, i));
+        }
+        Assertions.assertEquals(3, verifier.verifyHotp(key, 1, 3, 969429));
+        Assertions.assertEquals(-1, verifier.verifyHotp(key, 4, 3, 969429));
+    }
+
+    @Test
+    public void testTotpVectors() {
+        final OtpVerifier sha1 = OtpVerifier.builder().digits(8).build();
+        final OtpKey sha1Key = sha1.key(SHA1_SECRET);
+        Assertions.assertEquals(94287082, sha1.totp(sha1Key, 59_000L));
+        Assertions.assertEquals(7081804, sha1.totp(sha1Key, 1111111109_000L));
+        Assertions.assertEquals(65353130, sha1.totp(sha1Key, 20000000000_000L));
+
+        final OtpVerifier sha256 = OtpVerifier.builder().algorithm(OtpAlgorithm.SHA256).digits(8).build();
+        final OtpKey sha256Key = sha256.key("12345678901234567890123456789012".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertEquals(46119246, sha256.totp(sha256Key, 59_000L));
+        Assertions.assertEquals(68084774, sha256.totp(sha256Key, 1111111109_000L));
+    }
+
+    @Test
+    public void testDriftWindowAndReplay() {
+        final Clock clock = Clock.fixed(Instant.ofEpochSecond(1_600_000_000L), ZoneOffset.UTC);
+        final OtpVerifier verifier = OtpVerifier.builder().clock(clock).build();
+        final OtpKey key = verifier.key(SHA1_SECRET);
+        final long now = clock.millis();
+
+        Assertions.assertTrue(verifier.verifyTotp(key, verifier.totp(key, now - 30_000)));
+        Assertions.assertFalse(verifier.verifyTotp(key, verifier.totp(key, now - 60_000)));
+        Assertions.assertFalse(verifier.verifyTotp(key, verifier.totp(key, now + 60_000)));
+
+        final String code = String.format("%06d", verifier.totp(key));
+        Assertions.assertTrue(verifier.verifyTotp(key, code));
+        Assertions.assertFalse(verifier.verifyTotp(key, code));
+        // Replays are tracked per secret, not per key instance
+        Assertions.assertFalse(verifier.verifyTotp(verifier.key(SHA1_SECRET), code));
+        Assertions.assertTrue(verifier.verifyTotp(verifier.key("JBSWY3DPEHPK3PXP"), verifier.totp(verifier.key("JBSWY3DPEHPK3PXP"))));
+
+        Assertions.assertFalse(verifier.verifyTotp(key, "12345"));
+        Assertions.assertFalse(verifier.verifyTotp(key, "12a456"));
+    }
+
+    @Test
+    public void testEarlierStepRejected() {
+        final Clock clock = Clock.fixed(Instant.ofEpochSecond(1_600_000_000L), ZoneOffset.UTC);
+        final OtpVerifier verifier = OtpVerifier.builder().clock(clock).window(2).build();
+        final OtpKey key = verifier.key(SHA1_SECRET);
+        final long now = clock.millis();
+
+        Assertions.assertTrue(verifier.verifyTotp(key, verifier.totp(key, now)));
+        Assertions.assertFalse(verifier.verifyTotp(key, verifier.totp(key, now - 30_000)));
+        Assertions.assertFalse(verifier.verifyTotp(verifier.key(SHA1_SECRET), verifier.totp(key, now - 60_000)));
+        Assertions.assertTrue(verifier.verifyTotp(key, verifier.totp(key, now + 30_000)));
+        Assertions.assertFalse(verifier.verifyTotp(key, verifier.totp(key, now)));
+    }
+
+    @Test
+    public void testConcurrentReplay() {
+        final OtpVerifier verifier = OtpVerifier.builder().period(Duration.ofHours(1)).replayCapacity(8).build();
+        final AtomicInteger accepted = new AtomicInteger();
+        IntStream.range(0, 200).parallel().forEach(i -> {
+            final OtpKey key = verifier.key(new byte[]{(byte) (i % 100), 1, 2, 3, 4, 5, 6, 7, 8, 9});
+            if (verifier.verifyTotp(key, verifier.totp(key))) {
+                accepted.incrementAndGet();
+            }
+        });
+        Assertions.assertEquals(100, accepted.get());
+    }
+}
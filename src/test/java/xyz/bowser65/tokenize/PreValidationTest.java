@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+public class PreValidationTest {
+    private static final AccountFetcher FETCHER = id -> TestAccounts.ACCOUNT;
+
+    @Test
+    public void testJunkRejectedBeforeMac() {
+        final ValidationMetrics metrics = new ValidationMetrics();
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).listener(metrics).build();
+        final String valid = tokenize.generateToken(TestAccounts.ACCOUNT).toString();
+        final String signature = valid.substring(valid.lastIndexOf('.') + 1);
+        final char[] huge = new char[TokenReader.MAX_TOKEN_LENGTH + 1];
+        Arrays.fill(huge, 'A');
+
+        for (final String junk : Arrays.asList(
+                "", "garbage", "a.b.c", "..", "NDI=.MTIz." + signature.substring(1),
+                "NDI=.MTIz." + signature.replace(signature.charAt(0), '!'),
+                "N!I=.MTIz." + signature, "NDI=.YWJj." + signature, new String(huge),
+                new Token(tokenize, TestAccounts.ACCOUNT, null, tokenize.tokenTime() + 3600).toString(),
+                new Token(tokenize, TestAccounts.ACCOUNT, null, -10).toString())) {
+            Assertions.assertEquals(ValidationResult.Status.MALFORMED, tokenize.tryValidateToken(junk, FETCHER).getStatus(), junk);
+        }
+        Assertions.assertEquals(0, metrics.snapshot().getLatency(ValidationPhase.MAC).getCount());
+
+        // Tokens from nodes whose clock is slightly ahead are fine
+        Assertions.assertTrue(tokenize.tryValidateToken(new Token(tokenize, TestAccounts.ACCOUNT, null, tokenize.tokenTime() + 60).toString(), FETCHER).isValid());
+        Assertions.assertTrue(tokenize.tryValidateToken(valid, FETCHER).isValid());
+        Assertions.assertEquals(ValidationResult.Status.BAD_SIGNATURE,
+                tokenize.tryValidateToken(valid.substring(0, valid.length() - 3) + (valid.endsWith("AAA") ? "BBB" : "AAA"), FETCHER).getStatus());
+        Assertions.assertEquals(ValidationResult.Status.UNKNOWN_ACCOUNT, tokenize.tryValidateToken(valid, id -> null).getStatus());
+    }
+
+    @Test
+    public void testThrottle() {
+        final Tokenize tokenize = Tokenize.builder()
+                .secret(TestAccounts.SECRET)
+                .throttle(new TokenThrottle(1 << 16, Duration.ofHours(1), 3))
+                .build();
+        final String valid = tokenize.generateToken(TestAccounts.ACCOUNT).toString();
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(ValidationResult.Status.MALFORMED, tokenize.tryValidateToken("garbage", "10.0.0.1", FETCHER).getStatus());
+        }
+        Assertions.assertEquals(ValidationResult.Status.THROTTLED, tokenize.tryValidateToken(valid, "10.0.0.1", FETCHER).getStatus());
+        Assertions.assertTrue(tokenize.tryValidateToken(valid, "10.0.0.2", FETCHER).isValid());
+        // Valid tokens don't draw from the budget
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(tokenize.tryValidateToken(valid, "10.0.0.3", FETCHER).isValid());
+        }
+    }
+
+    @Test
+    public void testThrottleRefills() throws InterruptedException {
+        final TokenThrottle throttle = new TokenThrottle(1, Duration.ofMillis(50), 2);
+        throttle.penalize("client");
+        Assertions.assertFalse(throttle.isThrottled("client"));
+        throttle.penalize("client");
+        Assertions.assertTrue(throttle.isThrottled("client"));
+        for (int i = 0; i < 100; i++) {
+            throttle.penalize("client");
+        }
+        Thread.sleep(120);
+        Assertions.assertFalse(throttle.isThrottled("client"));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.SignatureException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class RevocationStoreTest {
+    private static final AccountFetcher FETCHER = id -> TestAccounts.ACCOUNT;
+
+    @Test
+    public void testRevokeSingleToken() throws SignatureException {
+        final RevocationStore store = new RevocationStore(16, Duration.ofDays(30));
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).maxAge(Duration.ofDays(30)).revocationStore(store).build();
+        final String stolen = tokenize.generateToken(TestAccounts.ACCOUNT, "Bot").toString();
+        final String other = tokenize.generateToken(TestAccounts.ACCOUNT, "Other").toString();
+
+        Assertions.assertTrue(tokenize.revokeToken(stolen));
+        Assertions.assertEquals(1, store.size());
+        Assertions.assertNull(tokenize.validateToken(stolen, (AccountFetcher) id -> {
+            throw new AssertionError("Revoked tokens must not be fetched");
+        }));
+        Assertions.assertNotNull(tokenize.validateToken(other, FETCHER));
+
+        final List<ValidationResult> results = tokenize.validateTokens(Arrays.asList(stolen, other), ids -> Collections.singletonMap("42", TestAccounts.ACCOUNT));
+        Assertions.assertEquals(ValidationResult.Status.REVOKED, results.get(0).getStatus());
+        Assertions.assertTrue(results.get(1).isValid());
+
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.revokeToken(other.substring(0, other.length() - 3) + "AAA"));
+        Assertions.assertThrows(IllegalStateException.class, () -> new Tokenize(TestAccounts.SECRET).revokeToken(other));
+    }
+
+    @Test
+    public void testMaxAge() throws SignatureException {
+        final RevocationStore store = new RevocationStore(16, Duration.ofSeconds(100));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Tokenize.builder().secret(TestAccounts.SECRET).revocationStore(store).build());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Tokenize.builder().secret(TestAccounts.SECRET).maxAge(Duration.ofSeconds(101)).revocationStore(store).build());
+
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).maxAge(Duration.ofSeconds(100)).revocationStore(store).build();
+        final String old = new Token(tokenize, TestAccounts.ACCOUNT, null, tokenize.tokenTime() - 101).toString();
+        Assertions.assertFalse(tokenize.revokeToken(old));
+        Assertions.assertEquals(0, store.size());
+        Assertions.assertNull(tokenize.validateToken(old, FETCHER));
+    }
+
+    @Test
+    public void testCachedTokenRevoked() throws SignatureException {
+        final RevocationStore store = new RevocationStore(16, Duration.ofDays(30));
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).maxAge(Duration.ofDays(30)).revocationStore(store).build();
+        final CachingTokenValidator validator = new CachingTokenValidator(tokenize, 100, Duration.ofMinutes(1));
+        final String stolen = tokenize.generateToken(TestAccounts.ACCOUNT, "Bot").toString();
+        final String other = tokenize.generateToken(TestAccounts.ACCOUNT, "Other").toString();
+        Assertions.assertNotNull(validator.validateToken(stolen, FETCHER));
+        Assertions.assertNotNull(validator.validateToken(other, FETCHER));
+
+        tokenize.revokeToken(stolen);
+        Assertions.assertNull(validator.validateToken(stolen, FETCHER));
+        Assertions.assertNotNull(validator.validateToken(other, FETCHER));
+        Assertions.assertEquals(1, validator.size());
+    }
+
+    @Test
+    public void testGrowthAndExpiry() {
+        final RevocationStore store = new RevocationStore(4, Duration.ofSeconds(100));
+        final Random random = new Random(7);
+        final long[] revoked = new long[1000];
+        for (int i = 0; i < revoked.length; i++) {
+            revoked[i] = random.nextLong();
+            store.revoke(revoked[i], i < 500 ? 0 : 50, 10);
+        }
+        Assertions.assertEquals(1000, store.size());
+        for (final long fingerprint : revoked) {
+            Assertions.assertTrue(store.isRevoked(fingerprint));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            falsePositives += store.isRevoked(random.nextLong()) ? 1 : 0;
+        }
+        Assertions.assertEquals(0, falsePositives);
+
+        store.purgeExpired(120);
+        Assertions.assertEquals(500, store.size());
+        Assertions.assertFalse(store.isRevoked(revoked[0]));
+        Assertions.assertTrue(store.isRevoked(revoked[999]));
+
+        // Already older than the max age, nothing to remember
+        Assertions.assertFalse(store.revoke(1234, 0, 120));
+        Assertions.assertFalse(store.isRevoked(1234));
+    }
+
+    @Test
+    public void testSaveAndLoad(@TempDir final Path dir) throws IOException, SignatureException {
+        final RevocationStore store = new RevocationStore(16, Duration.ofDays(30));
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).maxAge(Duration.ofDays(30)).revocationStore(store).build();
+        final String stolen = tokenize.generateToken(TestAccounts.ACCOUNT).toString();
+        tokenize.revokeToken(stolen);
+
+        final Path file = dir.resolve("revocations.bin");
+        store.save(file);
+        final RevocationStore loaded = RevocationStore.load(file, 16);
+        Assertions.assertEquals(1, loaded.size());
+        // The file isn't held once loaded
+        loaded.save(file);
+        Assertions.assertEquals(1, RevocationStore.load(file, 16).size());
+        final Tokenize restarted = Tokenize.builder().secret(TestAccounts.SECRET).maxAge(Duration.ofDays(30)).revocationStore(loaded).build();
+        Assertions.assertNull(restarted.validateToken(stolen, FETCHER));
+        Assertions.assertNotNull(restarted.validateToken(tokenize.generateToken(TestAccounts.ACCOUNT, "Bot").toString(), FETCHER));
+
+        Assertions.assertThrows(IOException.class, () -> RevocationStore.load(dir.resolve("missing"), 16));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Secret and accounts shared by the tests.
+ */
+final class TestAccounts {
+    static final byte[] SECRET = "very secure private key".getBytes(StandardCharsets.UTF_8);
+    /**
+     * Account {@code 42}, whose tokens are all valid.
+     */
+    static final IAccount ACCOUNT = account("42");
+
+    private TestAccounts() {
+    }
+
+    /**
+     * @return An account whose tokens are all valid.
+     */
+    static IAccount account(final String id) {
+        return account(id, 0);
+    }
+
+    static IAccount account(final String id, final long tokensValidSince) {
+        return new IAccount() {
+            @Override
+            public String getTokenId() {
+                return id;
+            }
+
+            @Override
+            public long tokensValidSince() {
+                return tokensValidSince;
+            }
+        };
+    }
+
+    static LongIdAccount longIdAccount(final long id, final long tokensValidSince) {
+        return new LongIdAccount() {
+            @Override
+            public long getTokenLongId() {
+                return id;
+            }
+
+            @Override
+            public long tokensValidSince() {
+                return tokensValidSince;
+            }
+        };
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TokenAuditorTest {
+    @Test
+    public void testAudit(@TempDir final Path dir) throws IOException {
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).build();
+        final long now = tokenize.tokenTime();
+        final Map<String, IAccount> accounts = new HashMap<>();
+        accounts.put("alice", TestAccounts.account("alice", 0));
+        accounts.put("bob", TestAccounts.account("bob", now - 100));
+
+        final Path first = dir.resolve("first.log"), second = dir.resolve("second.log"), empty = dir.resolve("empty.log");
+        try (Writer out = Files.newBufferedWriter(first); Writer out2 = Files.newBufferedWriter(second)) {
+            for (int i = 0; i < 500; i++) {
+                out.write(new Token(tokenize, accounts.get("alice"), null, now - i).toString() + "\n");
+                // Half of Bob's tokens predate his logout, with Windows line endings
+                out2.write(new Token(tokenize, accounts.get("bob"), "bot", now - i * 200 / 500).toString() + "\r\n");
+            }
+            final String forged = new Token(tokenize, accounts.get("alice"), null, now).toString();
+            for (int i = 0; i < 50; i++) {
+                out.write(forged.substring(0, forged.length() - 3) + (forged.endsWith("AAA") ? "BBB" : "AAA") + "\n\n");
+                out2.write("garbage " + i + "\n");
+            }
+            out.write(new Token(tokenize, TestAccounts.account("carol", 0), null, now).toString()); // No trailing line feed
+        }
+        Files.createFile(empty);
+
+        final AtomicInteger calls = new AtomicInteger();
+        final TokenAuditor auditor = new TokenAuditor(tokenize, ids -> {
+            calls.incrementAndGet();
+            final Map<String, IAccount> fetched = new HashMap<>();
+            for (final String id : ids) {
+                if (accounts.containsKey(id)) {
+                    fetched.put(id, accounts.get(id));
+                }
+            }
+            return fetched;
+        }, new ForkJoinPool(4), 1000, 64);
+        final AuditReport report = auditor.audit(first, second, empty);
+
+        Assertions.assertEquals(500 + 250, report.getCount(ValidationResult.Status.VALID));
+        Assertions.assertEquals(250, report.getCount(ValidationResult.Status.REVOKED));
+        Assertions.assertEquals(50, report.getCount(ValidationResult.Status.BAD_SIGNATURE));
+        Assertions.assertEquals(50, report.getCount(ValidationResult.Status.MALFORMED));
+        Assertions.assertEquals(1, report.getCount(ValidationResult.Status.UNKNOWN_ACCOUNT));
+        Assertions.assertEquals(1101, report.getTotalCount());
+        Assertions.assertEquals(500, report.getValidCount("alice"));
+        Assertions.assertEquals(250, report.getValidCount("bob"));
+        Assertions.assertEquals(250, report.getRevokedCount("bob"));
+        Assertions.assertEquals(2, report.getAccountIds().size());
+        Assertions.assertTrue(calls.get() > 1);
+
+        final StringBuilder csv = new StringBuilder();
+        report.writeTo(csv);
+        Assertions.assertTrue(csv.toString().contains("\nVALID,750\n"));
+        Assertions.assertTrue(csv.toString().contains("\nbob,250,250\n"));
+    }
+
+    @Test
+    public void testChunkSizes(@TempDir final Path dir) throws IOException {
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).build();
+        final IAccount alice = TestAccounts.account("alice", 0);
+        final Path file = dir.resolve("tokens.log");
+        try (Writer out = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < 100; i++) {
+                out.write(tokenize.generateToken(alice).toString() + "\n");
+            }
+        }
+
+        // Chunks smaller than a line, and boundaries falling on every offset of a line
+        for (final int chunkSize : new int[] { 1, 7, 61, 62, 63, 1 << 20 }) {
+            final TokenAuditor auditor = new TokenAuditor(tokenize, ids -> {
+                final Map<String, IAccount> fetched = new HashMap<>();
+                fetched.put("alice", alice);
+                return fetched;
+            }, ForkJoinPool.commonPool(), chunkSize, 10);
+            final AuditReport report = auditor.audit(file);
+            Assertions.assertEquals(100, report.getCount(ValidationResult.Status.VALID), "chunk size " + chunkSize);
+            Assertions.assertEquals(100, report.getTotalCount(), "chunk size " + chunkSize);
+        }
+    }
+}
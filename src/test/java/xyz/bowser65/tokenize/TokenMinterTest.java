@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+public class TokenMinterTest {
+    private static final Map<String, IAccount> ACCOUNTS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < 2500; i++) {
+            final String id = i % 10 == 0 ? "acc\u00f5unt-" + i : "account-" + i;
+            ACCOUNTS.put(id, TestAccounts.account(id, -1));
+        }
+    }
+
+    private static final AccountFetcher FETCHER = ACCOUNTS::get;
+
+    private static void assertTokens(final Tokenize tokenize, final List<IAccount> accounts, final List<String> tokens, final String prefix) throws SignatureException {
+        Assertions.assertEquals(accounts.size(), tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            final Token token = tokenize.validateToken(tokens.get(i), FETCHER);
+            Assertions.assertNotNull(token, tokens.get(i));
+            Assertions.assertSame(accounts.get(i), token.getAccount());
+            Assertions.assertEquals(prefix, token.getPrefix());
+        }
+    }
+
+    @Test
+    public void testMint() throws SignatureException {
+        final List<IAccount> accounts = new ArrayList<>(ACCOUNTS.values());
+        for (final TokenFormat format : TokenFormat.values()) {
+            final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).format(format).build();
+            final TokenMinter minter = new TokenMinter(tokenize);
+            assertTokens(tokenize, accounts, minter.mint(accounts, null), null);
+            assertTokens(tokenize, accounts, minter.mint(accounts, "Bot"), "Bot");
+            assertTokens(tokenize, accounts, minter.mint(accounts.stream(), "Bot").collect(Collectors.toList()), "Bot");
+        }
+    }
+
+    @Test
+    public void testMintTo() throws IOException, SignatureException {
+        final List<IAccount> accounts = new ArrayList<>(ACCOUNTS.values());
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).build();
+        final TokenMinter minter = new TokenMinter(tokenize, new ForkJoinPool(3), 64);
+
+        final StringWriter writer = new StringWriter();
+        Assertions.assertEquals(accounts.size(), minter.mintTo(accounts.stream(), "Bot", writer));
+        assertTokens(tokenize, accounts, lines(writer.toString()), "Bot");
+
+        final StringWriter unicode = new StringWriter();
+        Assertions.assertEquals(accounts.size(), minter.mintTo(accounts.stream(), "B\u00f8t", unicode));
+        assertTokens(tokenize, accounts, lines(unicode.toString()), "B\u00f8t");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Assertions.assertEquals(accounts.size(), minter.mintTo(accounts.parallelStream(), null, Channels.newChannel(bytes)));
+        assertTokens(tokenize, accounts, lines(new String(bytes.toByteArray(), StandardCharsets.UTF_8)), null);
+
+        Assertions.assertEquals(0, minter.mintTo(new ArrayList<IAccount>().stream(), null, new StringWriter()));
+    }
+
+    private static List<String> lines(final String text) {
+        Assertions.assertTrue(text.endsWith("\n"));
+        final List<String> lines = new ArrayList<>();
+        for (final String line : text.split("\n")) {
+            lines.add(line);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TokenizeTest {
+    private static final Tokenize TOKENIZE = new Tokenize(TestAccounts.SECRET);
+
+    private static final IAccount ACCOUNT = TestAccounts.account("1234567890");
+
+    private static final AccountFetcher FETCHER = id -> ACCOUNT.getTokenId().equals(id) ? ACCOUNT : null;
+
+    @Test
+    public void testValidate() throws SignatureException {
+        final Token token = TOKENIZE.generateToken(ACCOUNT);
+        final Token validated = TOKENIZE.validateToken(token.toString(), FETCHER);
+        Assertions.assertNotNull(validated);
+        Assertions.assertSame(ACCOUNT, validated.getAccount());
+        Assertions.assertEquals(token.getGenTime(), validated.getGenTime());
+        Assertions.assertNull(validated.getPrefix());
+    }
+
+    @Test
+    public void testValidatePrefixed() throws SignatureException {
+        final String token = TOKENIZE.generateToken(ACCOUNT, "Bot").toString();
+        final Token validated = TOKENIZE.validateToken(token, FETCHER);
+        Assertions.assertNotNull(validated);
+        Assertions.assertEquals("Bot", validated.getPrefix());
+        Assertions.assertEquals(token, validated.toString());
+    }
+
+    @Test
+    public void testValidateBytes() throws SignatureException {
+        final byte[] raw = TOKENIZE.generateToken(ACCOUNT, "Bot").toString().getBytes(StandardCharsets.UTF_8);
+        final byte[] padded = new byte[raw.length + 8];
+        System.arraycopy(raw, 0, padded, 4, raw.length);
+
+        Assertions.assertNotNull(TOKENIZE.validateToken(padded, 4, raw.length, FETCHER));
+        Assertions.assertNotNull(TOKENIZE.validateToken(new StringBuilder(new String(raw, StandardCharsets.UTF_8)), FETCHER));
+
+        final ByteBuffer heap = ByteBuffer.wrap(padded, 4, raw.length);
+        Assertions.assertNotNull(TOKENIZE.validateToken(heap, FETCHER));
+        Assertions.assertEquals(4, heap.position());
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(raw.length);
+        direct.put(raw).flip();
+        Assertions.assertNotNull(TOKENIZE.validateToken(direct, FETCHER));
+    }
+
+    @Test
+    public void testWireFormat() throws Exception {
+        final Token token = TOKENIZE.generateToken(ACCOUNT, "Bot");
+        final Base64.Encoder encoder = Base64.getEncoder();
+        final String signed = "Bot." + encoder.encodeToString(ACCOUNT.getTokenId().getBytes(StandardCharsets.UTF_8))
+                + '.' + encoder.encodeToString(String.valueOf(token.getGenTime()).getBytes(StandardCharsets.UTF_8));
+
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(TestAccounts.SECRET, "HmacSHA256"));
+        final byte[] signature = mac.doFinal(("TTF.1." + signed).getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(signed + '.' + encoder.withoutPadding().encodeToString(signature), token.toString());
+    }
+
+    @Test
+    public void testMemoizedForm() {
+        final Token token = TOKENIZE.generateToken(ACCOUNT);
+        final String signed = token.toString();
+        Assertions.assertSame(signed, token.toString());
+        Assertions.assertEquals(signed, token.writeTo(new StringBuilder()).toString());
+
+        final byte[] raw = new byte[token.encodedLength() + 2];
+        Assertions.assertEquals(token.encodedLength(), token.writeTo(raw, 2));
+        Assertions.assertEquals(signed, new String(raw, 2, raw.length - 2, StandardCharsets.UTF_8));
+
+        final ByteBuffer buffer = ByteBuffer.allocate(token.encodedLength());
+        token.writeTo(buffer);
+        Assertions.assertFalse(buffer.hasRemaining());
+
+        token.setPrefix("Bot");
+        Assertions.assertTrue(token.toString().startsWith("Bot."));
+        Assertions.assertNotEquals(signed, token.toString());
+    }
+
+    @Test
+    public void testInvalidSignature() {
+        final String token = TOKENIZE.generateToken(ACCOUNT).toString();
+        final String forged = token.substring(0, token.length() - 1) + (token.endsWith("A") ? 'B' : 'A');
+        Assertions.assertThrows(SignatureException.class, () -> TOKENIZE.validateToken(forged, FETCHER));
+
+        final Tokenize other = new Tokenize("another key".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertThrows(SignatureException.class, () -> other.validateToken(token, FETCHER));
+    }
+
+    @Test
+    public void testMalformed() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TOKENIZE.validateToken("garbage", FETCHER));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TOKENIZE.validateToken("a.b.c.d.e", FETCHER));
+    }
+
+    @Test
+    public void testRevoked() throws SignatureException {
+        final String token = TOKENIZE.generateToken(ACCOUNT).toString();
+        final IAccount revoked = TestAccounts.account(ACCOUNT.getTokenId(), Long.MAX_VALUE);
+        Assertions.assertNull(TOKENIZE.validateToken(token, (AccountFetcher) id -> revoked));
+        Assertions.assertNull(TOKENIZE.validateToken(token, (AccountFetcher) id -> null));
+    }
+
+    @Test
+    public void testValidateTokens() {
+        final IAccount revoked = TestAccounts.account("revoked", Long.MAX_VALUE);
+        final String valid = TOKENIZE.generateToken(ACCOUNT).toString();
+        final String forged = valid.substring(0, valid.length() - 1) + (valid.endsWith("A") ? 'B' : 'A');
+        final List<String> tokens = Arrays.asList(valid, forged, "garbage", TOKENIZE.generateToken(revoked).toString(),
+                TOKENIZE.generateToken(TestAccounts.account("unknown", 0)).toString(), valid);
+
+        final AtomicInteger calls = new AtomicInteger();
+        final List<ValidationResult> results = TOKENIZE.validateTokens(tokens, ids -> {
+            calls.incrementAndGet();
+            Assertions.assertEquals(new HashSet<>(Arrays.asList(ACCOUNT.getTokenId(), "revoked", "unknown")), ids);
+            final Map<String, IAccount> accounts = new HashMap<>();
+            accounts.put(ACCOUNT.getTokenId(), ACCOUNT);
+            accounts.put("revoked", revoked);
+            return accounts;
+        });
+
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(ValidationResult.Status.VALID, results.get(0).getStatus());
+        Assertions.assertSame(ACCOUNT, results.get(0).getToken().getAccount());
+        Assertions.assertEquals(ValidationResult.Status.BAD_SIGNATURE, results.get(1).getStatus());
+        Assertions.assertEquals(ValidationResult.Status.MALFORMED, results.get(2).getStatus());
+        Assertions.assertEquals(ValidationResult.Status.REVOKED, results.get(3).getStatus());
+        Assertions.assertEquals(ValidationResult.Status.UNKNOWN_ACCOUNT, results.get(4).getStatus());
+        Assertions.assertTrue(results.get(5).isValid());
+    }
+
+    @Test
+    public void testValidateAsync() throws SignatureException {
+        final String token = TOKENIZE.generateToken(ACCOUNT).toString();
+        Assertions.assertSame(ACCOUNT, TOKENIZE.validateToken(token, (AsyncAccountFetcher) id -> CompletableFuture.completedFuture(ACCOUNT))
+                .toCompletableFuture().join().getAccount());
+        Assertions.assertNull(TOKENIZE.validateToken(token, (AsyncAccountFetcher) id -> CompletableFuture.completedFuture(null))
+                .toCompletableFuture().join());
+
+        final CompletableFuture<IAccount> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("database down"));
+        Assertions.assertTrue(TOKENIZE.validateToken(token, (AsyncAccountFetcher) id -> failed)
+                .toCompletableFuture().isCompletedExceptionally());
+    }
+}
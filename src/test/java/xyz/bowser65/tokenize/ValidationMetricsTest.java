@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+public class ValidationMetricsTest {
+    @Test
+    public void testOutcomesAndPhases() throws SignatureException {
+        final ValidationMetrics metrics = new ValidationMetrics();
+        final Tokenize tokenize = Tokenize.builder().secret(TestAccounts.SECRET).listener(metrics).build();
+        final IAccount valid = TestAccounts.account("1", 0), revoked = TestAccounts.account("2", Long.MAX_VALUE);
+        final AccountFetcher fetcher = id -> "1".equals(id) ? valid : "2".equals(id) ? revoked : null;
+
+        final String token = tokenize.generateToken(valid).toString();
+        Assertions.assertNotNull(tokenize.validateToken(token, fetcher));
+        Assertions.assertNotNull(tokenize.validateToken(token, (AsyncAccountFetcher) id -> CompletableFuture.completedFuture(valid))
+                .toCompletableFuture().join());
+        Assertions.assertNull(tokenize.validateToken(tokenize.generateToken(revoked).toString(), fetcher));
+        Assertions.assertNull(tokenize.validateToken(tokenize.generateToken(TestAccounts.account("3", 0)).toString(), fetcher));
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(token.substring(0, token.length() - 2) + "AA", fetcher));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenize.validateToken("garbage", fetcher));
+        tokenize.validateTokens(Arrays.asList(token, "garbage"), ids -> Collections.singletonMap("1", valid));
+
+        final MetricsSnapshot snapshot = metrics.snapshot();
+        Assertions.assertEquals(3, snapshot.getCount(ValidationResult.Status.VALID));
+        Assertions.assertEquals(1, snapshot.getCount(ValidationResult.Status.REVOKED));
+        Assertions.assertEquals(1, snapshot.getCount(ValidationResult.Status.UNKNOWN_ACCOUNT));
+        Assertions.assertEquals(1, snapshot.getCount(ValidationResult.Status.BAD_SIGNATURE));
+        Assertions.assertEquals(2, snapshot.getCount(ValidationResult.Status.MALFORMED));
+        Assertions.assertEquals(8, snapshot.getTotalCount());
+        Assertions.assertEquals(8, snapshot.getLatency(ValidationPhase.PARSE).getCount());
+        Assertions.assertEquals(6, snapshot.getLatency(ValidationPhase.MAC).getCount());
+        Assertions.assertEquals(5, snapshot.getLatency(ValidationPhase.FETCH).getCount());
+        // Without a revocation store, there is nothing to time
+        Assertions.assertEquals(0, snapshot.getLatency(ValidationPhase.REVOCATION).getCount());
+    }
+
+    @Test
+    public void testHistogram() {
+        final ValidationMetrics metrics = new ValidationMetrics();
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            metrics.onPhase(ValidationPhase.MAC, nanos * 1000);
+        }
+        final MetricsSnapshot.Latency latency = metrics.snapshot().getLatency(ValidationPhase.MAC);
+        Assertions.assertEquals(1000, latency.getCount());
+        Assertions.assertEquals(1_000_000, latency.getMaxNanos());
+        Assertions.assertEquals(500_500, latency.getMeanNanos(), 0.001);
+        final long p50 = latency.getPercentileNanos(0.5);
+        Assertions.assertTrue(p50 >= 500_000 && p50 <= 500_000 * 1.25, "p50 " + p50);
+        Assertions.assertEquals(1_000_000, latency.getPercentileNanos(1));
+
+        for (long value : new long[]{0, 1, 3, 4, 5, 7, 8, 1023, 1024, Long.MAX_VALUE}) {
+            final int bucket = LatencyHistogram.bucket(value);
+            Assertions.assertTrue(value <= LatencyHistogram.upperBound(bucket), "value " + value);
+            Assertions.assertTrue(bucket == 0 || value > LatencyHistogram.upperBound(bucket - 1), "value " + value);
+        }
+    }
+}